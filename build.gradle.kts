@@ -21,6 +21,7 @@ val versionDetails: Closure<VersionDetails> by extra
 val gitDetails = versionDetails()
 
 val longTests: String? by project
+val binaryLibraries: String? by project
 
 group = "io.repseq"
 val gitLastTag = gitDetails.lastTag.removePrefix("v")
@@ -97,6 +98,8 @@ val buildLibrary by tasks.registering(JavaExec::class) {
     main = "io.repseq.maven.CompileLibraryGradleStage"
     classpath = sourceSets["main"].runtimeClasspath
     args(project.rootDir)
+    if (binaryLibraries != null)
+        args("--binary")
 }
 
 tasks.classes {
@@ -25,12 +25,17 @@ import com.milaboratory.core.Range;
 import com.milaboratory.core.io.sequence.fasta.RandomAccessFastaReader;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+import io.repseq.core.BinaryLibraryFormat;
+import io.repseq.core.SequencePrefetcher;
 import io.repseq.core.VDJCGene;
 import io.repseq.core.VDJCLibrary;
 import io.repseq.core.VDJCLibraryRegistry;
 import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.KnownVDJCLibraryMetaFields;
 import io.repseq.dto.VDJCDataUtils;
 import io.repseq.dto.VDJCLibraryData;
+import io.repseq.seqbase.SequenceAddress;
+import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,17 +43,17 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 public class CompileAction implements Action {
     private static final Logger log = LoggerFactory.getLogger(CompileAction.class);
+    public static final int DEFAULT_PREFETCH_THREADS = 8;
     final Params params = new Params();
 
     @Override
     public void go(ActionHelper helper) throws Exception {
-        compile(Paths.get(params.getInput()), Paths.get(params.getOutput()), params.surroundings);
+        compile(Paths.get(params.getInput()), Paths.get(params.getOutput()), params.surroundings,
+                params.prefetchThreads);
     }
 
     @Override
@@ -62,9 +67,22 @@ public class CompileAction implements Action {
     }
 
     public static void compile(Path source, Path destination, int surroundings) throws IOException {
+        compile(source, destination, surroundings, 0);
+    }
+
+    public static void compile(Path source, Path destination, int surroundings, int prefetchThreads)
+            throws IOException {
         VDJCLibraryRegistry.resetDefaultRegistry();
 
         VDJCLibraryRegistry reg = VDJCLibraryRegistry.getDefault();
+        // Downloading / opening all referenced sequences in parallel on library registration
+        if (prefetchThreads > 0)
+            reg.setPrefetch(prefetchThreads, new SequencePrefetcher.Listener() {
+                @Override
+                public void prefetched(SequenceAddress address, Throwable error, int done, int total) {
+                    log.debug("Prefetched {} ({}/{}){}", address, done, total, error == null ? "" : " with error");
+                }
+            });
         reg.registerLibraries(source, "lib");
 
         List<VDJCLibraryData> result = new ArrayList<>();
@@ -104,19 +122,40 @@ public class CompileAction implements Action {
                 }
                 fragmentsBuilder.addRegion(uri, region, seq);
             }
+            // Storing precomputed checksum, so it is not recalculated on each load of compiled library
+            SortedMap<String, SortedSet<String>> meta = new TreeMap<>(lib.getData().getMeta());
             result.add(new VDJCLibraryData(lib.getTaxonId(), lib.getData().getSpeciesNames(),
-                    lib.getData().getGenes(), lib.getData().getMeta(), fragmentsBuilder.getFragments()));
+                    lib.getData().getGenes(), meta, fragmentsBuilder.getFragments())
+                    .setMetaValue(KnownVDJCLibraryMetaFields.CHECKSUM,
+                            Hex.encodeHexString(VDJCLibrary.calculateChecksum(lib.getGenes()))));
         }
 
-        VDJCDataUtils.writeToFile(result, destination, true);
+        writeCompiled(result, destination);
 
         log.info("{} compiled successfully.", source);
     }
 
+    /**
+     * Writes compiled libraries in json or binary format, depending on the destination file extension
+     * (see {@link BinaryLibraryFormat#EXTENSION})
+     *
+     * @param libraries   libraries
+     * @param destination output file
+     */
+    public static void writeCompiled(List<VDJCLibraryData> libraries, Path destination) throws IOException {
+        if (BinaryLibraryFormat.isBinaryLibraryFile(destination.getFileName().toString())) {
+            VDJCDataUtils.sort(libraries);
+            BinaryLibraryFormat.writeToFile(libraries, destination);
+        } else
+            VDJCDataUtils.writeToFile(libraries, destination, true);
+    }
+
     @Parameters(commandDescription = "Compile a library into self-contained compiled library file, by embedding " +
-            "sequence information into \"sequenceFragments\" section.")
+            "sequence information into \"sequenceFragments\" section and precomputed library checksum into " +
+            "\"meta\" section. If output file name ends with \".bin\", " +
+            "library is written in binary format, that can be loaded without parsing.")
     public static final class Params extends ActionParametersWithOutput {
-        @Parameter(description = "input.json[.gz] output.json[.gz]", arity = 2)
+        @Parameter(description = "input.json[.gz] output.(json[.gz]|bin)", arity = 2)
         public List<String> parameters;
 
         @Parameter(description = "Length of surrounding sequences to include into library. Number of upstream and " +
@@ -127,6 +166,11 @@ public class CompileAction implements Action {
                 names = {"-s", "--surrounding"})
         public int surroundings = 30;
 
+        @Parameter(description = "Number of threads used to download / open sequences referenced by the library " +
+                "in parallel, before sequences are extracted. 0 to disable prefetch.",
+                names = {"--prefetch-threads"})
+        public int prefetchThreads = DEFAULT_PREFETCH_THREADS;
+
         public String getInput() {
             return parameters.get(0);
         }
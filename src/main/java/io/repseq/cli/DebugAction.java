@@ -63,6 +63,7 @@ public class DebugAction implements Action {
                 List<String> warnings = new ArrayList<>();
                 if (gene.isFunctional() || params.getCheckAll()) {
                     NucleotideSequence l3;
+                    AminoAcidSequence aa3;
                     switch (gene.getGeneType()) {
                         case Variable:
 
@@ -75,9 +76,11 @@ public class DebugAction implements Action {
                                 warnings.add("CDR3 start contains wildcards: " + gene.getName() + " / " + l3);
                             else if (l3.size() != 3)
                                 warnings.add("Unable to translate sequence: " + gene.getName() + " / " + l3);
-                            else if (AminoAcidSequence.translate(l3).codeAt(0) != AminoAcidAlphabet.C)
+                            else if ((aa3 = gene.getAAFeature(cdr3FirstTriplet)) == null)
+                                warnings.add("Unable to translate sequence: " + gene.getName() + " / " + l3);
+                            else if (aa3.codeAt(0) != AminoAcidAlphabet.C)
                                 warnings.add("CDR3 does not start with C, was: " + l3.toString() +
-                                        " / " + AminoAcidSequence.translate(l3).toString() + " / CDR3Begin: " +
+                                        " / " + aa3.toString() + " / CDR3Begin: " +
                                         gene.getData().getAnchorPoints().get(ReferencePoint.CDR3Begin));
 
                             // Flag suspicious exon borders
@@ -120,10 +123,12 @@ public class DebugAction implements Action {
                                 warnings.add("Unable to find CDR3 end");
                             else if (l3.size() != 3)
                                 warnings.add("Unable to translate sequence: " + gene.getName() + " / " + l3);
-                            else if (AminoAcidSequence.translate(l3).codeAt(0) != AminoAcidAlphabet.W &&
-                                    AminoAcidSequence.translate(l3).codeAt(0) != AminoAcidAlphabet.F)
+                            else if ((aa3 = gene.getAAFeature(cdr3LastTriplet)) == null)
+                                warnings.add("Unable to translate sequence: " + gene.getName() + " / " + l3);
+                            else if (aa3.codeAt(0) != AminoAcidAlphabet.W &&
+                                    aa3.codeAt(0) != AminoAcidAlphabet.F)
                                 warnings.add("CDR3 does not end with W or F, was: " + l3.toString() + " / " +
-                                        AminoAcidSequence.translate(l3).toString() + " / CDR3End: " +
+                                        aa3.toString() + " / CDR3End: " +
                                         gene.getData().getAnchorPoints().get(ReferencePoint.CDR3End));
 
                             break;
@@ -186,6 +191,11 @@ public class DebugAction implements Action {
     }
 
     private static AminoAcidSequence getAminoAcidSequence(VDJCGene gene, GeneFeature geneFeature, NucleotideSequence nSequence) {
+        // Cached translation, available if reading frame can be derived from the feature boundaries
+        AminoAcidSequence cached = gene.getAAFeature(geneFeature);
+        if (cached != null)
+            return cached;
+
         ReferencePoints partitioning = gene.getPartitioning();
         ReferencePoint frameReference = GeneFeature.getFrameReference(geneFeature);
 
@@ -31,7 +31,6 @@ import com.milaboratory.cli.ActionParameters;
 import com.milaboratory.cli.ActionParametersWithOutput;
 import com.milaboratory.core.io.sequence.fasta.FastaRecord;
 import com.milaboratory.core.io.sequence.fasta.FastaWriter;
-import com.milaboratory.core.sequence.AminoAcidSequence;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.util.GlobalObjectMappers;
 import io.repseq.core.Chains;
@@ -241,6 +240,9 @@ public class ExportCloneSequencesAction implements Action {
         final GeneFeature geneFeature;
         final String chain;
         final boolean aa;
+        // Buffers reused between clones, nucleotide features are converted to text directly from letter codes
+        byte[] codes = new byte[256];
+        char[] chars = new char[256];
 
         public DescriptionExtractorSeq(GeneFeature geneFeature, String chain, boolean aa) {
             this.geneFeature = geneFeature;
@@ -253,9 +255,18 @@ public class ExportCloneSequencesAction implements Action {
             if (chain != null)
                 gene = clone.genes.get(chain);
             if (aa)
-                return AminoAcidSequence.translate(gene.getFeature(geneFeature), gene.getPartitioning().getTranslationParameters(geneFeature)).toString();
-            else
-                return gene.getFeature(geneFeature).toString();
+                return gene.getAAFeature(geneFeature).toString();
+            int length = gene.getPartitioning().getLength(geneFeature);
+            if (length > codes.length) {
+                codes = new byte[Math.max(length, 2 * codes.length)];
+                chars = new char[codes.length];
+            }
+            length = gene.getFeatureCodes(geneFeature, codes, 0);
+            if (length < 0)
+                throw new IllegalArgumentException("Feature " + GeneFeature.encode(geneFeature) + " is not available.");
+            for (int i = 0; i < length; ++i)
+                chars[i] = NucleotideSequence.ALPHABET.codeToSymbol(codes[i]);
+            return new String(chars, 0, length);
         }
     }
 }
@@ -25,7 +25,6 @@ import com.milaboratory.cli.ActionHelper;
 import com.milaboratory.cli.ActionParameters;
 import com.milaboratory.cli.ActionParametersWithOutput;
 import com.milaboratory.core.sequence.AminoAcidSequence;
-import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.util.GlobalObjectMappers;
 import io.repseq.core.GeneFeature;
 import io.repseq.core.VDJCGene;
@@ -65,14 +64,14 @@ public class GenerateClonesAction implements Action {
             for (int i = 0; i < params.numberOfClones; i++) {
                 GClone clone = generator.sample();
                 for (GGene g : clone.genes.values()) {
-                    NucleotideSequence cdr3 = g.getFeature(GeneFeature.CDR3);
+                    // Length is calculated from reference points, without extraction of the sequence
                     if (params.isInFrame())
-                        if (cdr3.size() % 3 != 0) {
+                        if (g.getPartitioning().getLength(GeneFeature.CDR3) % 3 != 0) {
                             --i;
                             continue OUTER;
                         }
                     if (params.isNoStops())
-                        if (AminoAcidSequence.translateFromCenter(cdr3).containStops()) {
+                        if (AminoAcidSequence.translateFromCenter(g.getFeature(GeneFeature.CDR3)).containStops()) {
                             --i;
                             continue OUTER;
                         }
@@ -106,19 +106,27 @@ public class InferAnchorPointsAction implements Action {
                 if (nSeq == null)
                     continue;
 
-                ReferencePoint frameReference = GeneFeature.getFrameReference(geneFeature);
                 ReferencePoints partitioning = gene.getPartitioning();
 
-                if (frameReference == null)
-                    continue;
+                // Cached translation, available if reading frame can be derived from the feature boundaries
+                TranslationParameters frame = partitioning.getTranslationParameters(geneFeature);
+                AminoAcidSequence aaSequence = frame == null ? null : gene.getAAFeature(geneFeature);
 
-                int relativePosition = partitioning.getRelativePosition(geneFeature, frameReference);
+                if (aaSequence == null) {
+                    // Falling back to the frame of the feature's frame reference point
+                    ReferencePoint frameReference = GeneFeature.getFrameReference(geneFeature);
+                    int relativePosition = frameReference == null ? -1 :
+                            partitioning.getRelativePosition(geneFeature, frameReference);
 
-                if (relativePosition < 0)
-                    continue;
+                    if (relativePosition < 0) {
+                        System.out.println("WARNING: Unable to translate " + GeneFeature.encode(geneFeature) +
+                                " of reference gene " + gene.getName() + ", skipping.");
+                        continue;
+                    }
 
-                TranslationParameters frame = withIncompleteCodon(relativePosition);
-                AminoAcidSequence aaSequence = AminoAcidSequence.translate(nSeq, frame);
+                    frame = withIncompleteCodon(relativePosition);
+                    aaSequence = AminoAcidSequence.translate(nSeq, frame);
+                }
 
                 aligner.addReference(aaSequence, new Ref(gene, frame, nSeq.size()));
                 ++dbSize;
@@ -30,6 +30,10 @@ public class Main {
             Path cachePath = Paths.get(System.getProperty("user.home"), ".repseqio", "cache");
             SequenceResolvers.initDefaultResolver(cachePath);
         }
+        if (System.getProperty("offHeapRecords") != null)
+            SequenceResolvers.setOffHeapRecords(true);
+        if (System.getProperty("rangeRequests") != null)
+            SequenceResolvers.setRangeRequests(true);
 
         // Setting up main helper
         JCommanderBasedMain main = new JCommanderBasedMain("repseqio",
@@ -47,7 +51,8 @@ public class Main {
                 new FormatAction(),
                 new StatAction(),
                 new FromFastaAction(),
-                new FromPaddedFastaAction());
+                new FromPaddedFastaAction(),
+                new TwoBitAction());
 
         main.setVersionInfoCallback(new Runnable() {
             @Override
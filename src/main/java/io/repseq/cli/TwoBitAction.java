@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.milaboratory.cli.Action;
+import com.milaboratory.cli.ActionHelper;
+import com.milaboratory.cli.ActionParameters;
+import io.repseq.util.TwoBitFastaFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class TwoBitAction implements Action {
+    private static final Logger log = LoggerFactory.getLogger(TwoBitAction.class);
+    final Params params = new Params();
+
+    @Override
+    public void go(ActionHelper helper) throws Exception {
+        for (String input : params.parameters) {
+            Path fasta = Paths.get(input);
+            if (!params.getForce() && TwoBitFastaFile.hasSidecar(fasta)) {
+                log.info("Up-to-date 2-bit file exists for {}, skipping.", fasta);
+                continue;
+            }
+            Path sidecar = TwoBitFastaFile.convert(fasta);
+            log.info("Converted {} to {}", fasta, sidecar);
+        }
+    }
+
+    @Override
+    public String command() {
+        return "twoBit";
+    }
+
+    @Override
+    public ActionParameters params() {
+        return params;
+    }
+
+    @Parameters(commandDescription = "Convert FASTA files to 2-bit files placed next to them. Local file " +
+            "sequences of libraries are then read from the memory-mapped 2-bit files instead of text FASTA files.")
+    public static final class Params extends ActionParameters {
+        @Parameter(description = "input.fasta [input2.fasta ...]")
+        public List<String> parameters;
+
+        @Parameter(description = "Convert files even if up-to-date 2-bit file already exists.",
+                names = {"-f", "--force"})
+        public boolean force = false;
+
+        public boolean getForce() {
+            return force;
+        }
+
+        @Override
+        public void validate() {
+            super.validate();
+            if (parameters == null || parameters.isEmpty())
+                throw new ParameterException("No input files.");
+        }
+    }
+}
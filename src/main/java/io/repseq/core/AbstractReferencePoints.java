@@ -118,6 +118,16 @@ public abstract class AbstractReferencePoints<T extends AbstractReferencePoints<
         return create(newPoints);
     }
 
+    /**
+     * Returns lightweight view of this reference points, which can be shifted and masked without copying of positions
+     * array (see {@link ReferencePointsView})
+     *
+     * @return view of this reference points
+     */
+    public ReferencePointsView view() {
+        return new ReferencePointsView(this, 0, 0L);
+    }
+
     public T move(int offset) {
         int[] result = new int[points.length];
         for (int i = 0; i < points.length; i++)
@@ -77,9 +77,42 @@ public abstract class AbstractReferencePointsBuilder<T extends AbstractReference
     }
 
     public void setPositionsFrom(AbstractReferencePoints points) {
-        for (int i = 0; i < points.points.length; i++)
-            if (points.points[i] != -1)
-                setPosition(points.basicReferencePointFromIndex(i), points.points[i]);
+        setPositionsFrom(points.view());
+    }
+
+    /**
+     * Sets all defined positions from the view. Order of points is validated once, after all positions are set; if
+     * validation fails, builder is returned to the previous state.
+     *
+     * @param view reference points view
+     * @throws IllegalArgumentException if resulting set of points is not valid
+     */
+    public void setPositionsFrom(ReferencePointsView view) {
+        int[] backup = null;
+        try {
+            for (int i = 0; i < view.size(); i++) {
+                int position = view.positionAt(i);
+                if (position == -1)
+                    continue;
+                if (position < -1)
+                    throw new IllegalArgumentException("Wrong position value: " + position);
+                if (backup == null)
+                    backup = points.clone();
+                points[indexFromBasicReferencePoint(view.basicReferencePointAt(i))] = position;
+            }
+
+            // Checking for validity
+            if (backup != null)
+                ReferencePoints.checkReferencePoints(points, pointsToCheck);
+
+        } catch (IllegalArgumentException ex) {
+            // Go back to valid array state
+            if (backup != null)
+                System.arraycopy(backup, 0, points, 0, points.length);
+
+            // Rethrow exception
+            throw ex;
+        }
     }
 
     public T build() {
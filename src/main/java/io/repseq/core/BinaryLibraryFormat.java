@@ -0,0 +1,358 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.VDJCGeneData;
+import io.repseq.dto.VDJCLibraryData;
+import io.repseq.util.TwoBitNucleotideCodec;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static io.repseq.core.BasicReferencePoint.TOTAL_NUMBER_OF_BASIC_REFERENCE_POINTS;
+
+/**
+ * Binary representation of compiled libraries, alternative to {libraryName}.json files. Binary libraries are read
+ * directly from (memory-mapped) byte buffers without JSON parsing.
+ *
+ * File layout (big-endian):
+ *
+ * <pre>
+ * header:     magic "RSQIOBIN", int format version, int number of libraries
+ * library:    long taxonId, species names, meta, int number of genes, int number of fragments
+ * gene table: name, byte gene type id, boolean isFunctional, chains, base sequence, meta,
+ *             int[TOTAL_NUMBER_OF_BASIC_REFERENCE_POINTS] anchor points (-1 for undefined)
+ * fragments:  uri, int from, int to, 2-bit packed sequence record (see {@link TwoBitNucleotideCodec})
+ * </pre>
+ *
+ * Strings are written as int length followed by UTF-8 bytes.
+ */
+public final class BinaryLibraryFormat {
+    /**
+     * Extension of binary library files
+     */
+    public static final String EXTENSION = ".bin";
+    static final byte[] MAGIC = "RSQIOBIN".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 1;
+
+    private BinaryLibraryFormat() {
+    }
+
+    /**
+     * Returns true if file name has binary library extension
+     *
+     * @param fileName file name
+     * @return true if file name has binary library extension
+     */
+    public static boolean isBinaryLibraryFile(String fileName) {
+        return fileName.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /* ================================ Writing ================================ */
+
+    /**
+     * Writes libraries to file in binary format
+     *
+     * @param libraries libraries
+     * @param file      output file
+     */
+    public static void writeToFile(List<VDJCLibraryData> libraries, Path file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file.toFile()), 1 << 16))) {
+            write(libraries, output);
+        }
+    }
+
+    /**
+     * Writes libraries in binary format
+     *
+     * @param libraries libraries
+     * @param output    output
+     */
+    public static void write(List<VDJCLibraryData> libraries, DataOutput output) throws IOException {
+        output.write(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(libraries.size());
+        for (VDJCLibraryData library : libraries)
+            writeLibrary(library, output);
+    }
+
+    static void writeLibrary(VDJCLibraryData library, DataOutput output) throws IOException {
+        output.writeLong(library.getTaxonId());
+        writeStrings(library.getSpeciesNames(), output);
+        writeMeta(library.getMeta(), output);
+        output.writeInt(library.getGenes().size());
+        output.writeInt(library.getSequenceFragments().size());
+
+        // Gene table
+        for (VDJCGeneData gene : library.getGenes())
+            writeGene(gene, output);
+
+        // Fragments
+        for (KnownSequenceFragmentData fragment : library.getSequenceFragments()) {
+            writeString(fragment.getUri().toString(), output);
+            output.writeInt(fragment.getRange().getFrom());
+            output.writeInt(fragment.getRange().getTo());
+            TwoBitNucleotideCodec.write(output, fragment.getSequence());
+        }
+    }
+
+    static void writeGene(VDJCGeneData gene, DataOutput output) throws IOException {
+        writeString(gene.getName(), output);
+        output.writeByte(gene.getGeneType().id());
+        output.writeBoolean(gene.isFunctional());
+        writeChains(gene.getChains(), output);
+        writeBaseSequence(gene.getBaseSequence(), output);
+        writeMeta(gene.getMeta(), output);
+
+        int[] points = new int[TOTAL_NUMBER_OF_BASIC_REFERENCE_POINTS];
+        Arrays.fill(points, -1);
+        for (Map.Entry<ReferencePoint, Long> entry : gene.getAnchorPoints().entrySet()) {
+            if (!entry.getKey().isBasicPoint())
+                throw new IllegalArgumentException("Error writing gene: " + gene.getName() +
+                        ". Only basic anchor points are supported, " + entry.getKey() + " is not basic.");
+            long position = entry.getValue();
+            if (position < 0 || position > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Error writing gene: " + gene.getName() +
+                        ". Wrong position of " + entry.getKey() + ": " + position);
+            points[entry.getKey().getIndex()] = (int) position;
+        }
+        for (int point : points)
+            output.writeInt(point);
+    }
+
+    static void writeBaseSequence(BaseSequence baseSequence, DataOutput output) throws IOException {
+        writeString(baseSequence.getOrigin().toString(), output);
+        // -1 is written for absent regions / mutations, to distinguish them from empty ones
+        Range[] regions = baseSequence.getRegions();
+        output.writeInt(regions == null ? -1 : regions.length);
+        if (regions != null)
+            for (Range region : regions) {
+                output.writeInt(region.getFrom());
+                output.writeInt(region.getTo());
+            }
+        Mutations<NucleotideSequence> mutations = baseSequence.getMutations();
+        int[] rawMutations = mutations == null ? null : mutations.getRAWMutations();
+        output.writeInt(rawMutations == null ? -1 : rawMutations.length);
+        if (rawMutations != null)
+            for (int mutation : rawMutations)
+                output.writeInt(mutation);
+    }
+
+    static void writeChains(Chains chains, DataOutput output) throws IOException {
+        if (chains == null)
+            output.writeInt(-2);
+        else if (chains.equals(Chains.ALL))
+            output.writeInt(-1);
+        else {
+            List<String> list = new ArrayList<>();
+            for (String chain : chains)
+                list.add(chain);
+            Collections.sort(list);
+            writeStrings(list, output);
+        }
+    }
+
+    static void writeMeta(SortedMap<String, SortedSet<String>> meta, DataOutput output) throws IOException {
+        output.writeInt(meta.size());
+        for (Map.Entry<String, SortedSet<String>> entry : meta.entrySet()) {
+            writeString(entry.getKey(), output);
+            writeStrings(entry.getValue(), output);
+        }
+    }
+
+    static void writeStrings(Collection<String> strings, DataOutput output) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings)
+            writeString(string, output);
+    }
+
+    static void writeString(String string, DataOutput output) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /* ================================ Reading ================================ */
+
+    /**
+     * Memory-maps the file and reads libraries from it
+     *
+     * @param file binary library file
+     * @return libraries
+     */
+    public static VDJCLibraryData[] readFromFile(Path file) throws IOException {
+        return read(map(file));
+    }
+
+    /**
+     * Memory-maps the whole file in read-only mode
+     *
+     * @param file file
+     * @return read-only buffer
+     */
+    public static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Mapping stays valid after channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads libraries from stream
+     *
+     * @param stream stream
+     * @return libraries
+     */
+    public static VDJCLibraryData[] readFromStream(InputStream stream) throws IOException {
+        return read(ByteBuffer.wrap(IOUtils.toByteArray(stream)));
+    }
+
+    /**
+     * Reads libraries from buffer, starting from its current position
+     *
+     * @param buffer buffer
+     * @return libraries
+     */
+    public static VDJCLibraryData[] read(ByteBuffer buffer) {
+        buffer = buffer.duplicate();
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IllegalArgumentException("Not a binary library.");
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION)
+            throw new IllegalArgumentException("Unsupported binary library format version: " + version);
+        VDJCLibraryData[] result = new VDJCLibraryData[buffer.getInt()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = readLibrary(buffer);
+        return result;
+    }
+
+    static VDJCLibraryData readLibrary(ByteBuffer buffer) {
+        long taxonId = buffer.getLong();
+        List<String> speciesNames = readStrings(buffer, new ArrayList<String>());
+        SortedMap<String, SortedSet<String>> meta = readMeta(buffer);
+        int numberOfGenes = buffer.getInt();
+        int numberOfFragments = buffer.getInt();
+
+        List<VDJCGeneData> genes = new ArrayList<>(numberOfGenes);
+        for (int i = 0; i < numberOfGenes; i++)
+            genes.add(readGene(buffer));
+
+        List<KnownSequenceFragmentData> fragments = new ArrayList<>(numberOfFragments);
+        for (int i = 0; i < numberOfFragments; i++) {
+            URI uri = URI.create(readString(buffer));
+            int from = buffer.getInt();
+            int to = buffer.getInt();
+            fragments.add(new KnownSequenceFragmentData(uri, new Range(from, to), TwoBitNucleotideCodec.read(buffer)));
+        }
+
+        return new VDJCLibraryData(taxonId, speciesNames, genes, meta, fragments);
+    }
+
+    static VDJCGeneData readGene(ByteBuffer buffer) {
+        String name = readString(buffer);
+        GeneType geneType = GeneType.get(buffer.get());
+        boolean isFunctional = buffer.get() != 0;
+        Chains chains = readChains(buffer);
+        BaseSequence baseSequence = readBaseSequence(buffer);
+        SortedMap<String, SortedSet<String>> meta = readMeta(buffer);
+
+        SortedMap<ReferencePoint, Long> anchorPoints = new TreeMap<>();
+        for (int i = 0; i < TOTAL_NUMBER_OF_BASIC_REFERENCE_POINTS; i++) {
+            int position = buffer.getInt();
+            if (position != -1)
+                anchorPoints.put(new ReferencePoint(BasicReferencePoint.getByIndex(i)), (long) position);
+        }
+
+        return new VDJCGeneData(baseSequence, name, geneType, isFunctional, chains, meta, anchorPoints);
+    }
+
+    static BaseSequence readBaseSequence(ByteBuffer buffer) {
+        URI origin = URI.create(readString(buffer));
+        int numberOfRegions = buffer.getInt();
+        Range[] regions = numberOfRegions == -1 ? null : new Range[numberOfRegions];
+        for (int i = 0; i < numberOfRegions; i++) {
+            int from = buffer.getInt();
+            regions[i] = new Range(from, buffer.getInt());
+        }
+        int numberOfMutations = buffer.getInt();
+        Mutations<NucleotideSequence> mutations = null;
+        if (numberOfMutations != -1) {
+            int[] rawMutations = new int[numberOfMutations];
+            for (int i = 0; i < numberOfMutations; i++)
+                rawMutations[i] = buffer.getInt();
+            mutations = new Mutations<>(NucleotideSequence.ALPHABET, rawMutations);
+        }
+        return new BaseSequence(origin, regions, mutations);
+    }
+
+    static Chains readChains(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size == -2)
+            return null;
+        if (size == -1)
+            return Chains.ALL;
+        String[] chains = new String[size];
+        for (int i = 0; i < size; i++)
+            chains[i] = readString(buffer);
+        return Chains.of(chains);
+    }
+
+    static SortedMap<String, SortedSet<String>> readMeta(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        SortedMap<String, SortedSet<String>> meta = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readString(buffer);
+            meta.put(key, readStrings(buffer, new TreeSet<String>()));
+        }
+        return meta;
+    }
+
+    static <C extends Collection<String>> C readStrings(ByteBuffer buffer, C target) {
+        int size = buffer.getInt();
+        for (int i = 0; i < size; i++)
+            target.add(readString(buffer));
+        return target;
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String result;
+        if (buffer.hasArray()) {
+            result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            result = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+}
@@ -20,17 +20,28 @@ import com.fasterxml.jackson.annotation.JsonValue;
 import com.milaboratory.primitivio.annotations.Serializable;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Immutable set of strings
+ * Immutable set of strings.
+ *
+ * Each distinct chain name is assigned a bit position on first use (see {@link ChainNames}), so set is stored as a
+ * single long mask, and set operations are single bitwise operations. Names that don't fit into 64 bits are stored
+ * in a sorted overflow array. Well-known chain sets are interned, use {@link #of(String...)} or {@link
+ * #parse(String)} to get canonical instances.
  */
 @Serializable(asJson = true)
 public final class Chains implements Iterable<String> {
+    /**
+     * Interned instances (only mask-based sets without overflow), mask -> chains
+     */
+    private static final ConcurrentHashMap<Long, Chains> INTERNED = new ConcurrentHashMap<>();
+
     /**
      * Special chains object represents all possible alleles.
      */
-    public static final Chains ALL = new Chains((HashSet<String>) null);
+    public static final Chains ALL = new Chains(true, 0L, null);
     public static final NamedChains ALL_NAMED = new NamedChains("ALL", ALL);
 
     public static final Chains EMPTY = new Chains();
@@ -65,7 +76,7 @@ public final class Chains implements Iterable<String> {
         public final Chains chains;
 
         public NamedChains(Chains chains) {
-            this(chains.chains.stream().sorted().collect(Collectors.joining("_")), chains);
+            this(chains.toString().replace(',', '_'), chains);
         }
 
         public NamedChains(String name, Chains chains) {
@@ -92,97 +103,226 @@ public final class Chains implements Iterable<String> {
         WELL_KNOWN_CHAINS.add(IGKL_NAMED);
         WELL_KNOWN_CHAINS.add(IG_NAMED);
 
-        for (NamedChains wkc : WELL_KNOWN_CHAINS)
+        for (NamedChains wkc : WELL_KNOWN_CHAINS) {
             WELL_KNOWN_CHAINS_MAP.put(wkc.name, wkc.chains);
+            intern(wkc.chains);
+        }
+        intern(EMPTY);
     }
 
-    final Set<String> chains;
+    /**
+     * True for {@link #ALL}
+     */
+    private final boolean all;
+    /**
+     * Bit i is set if chain with name {@code ChainNames.name(i)} is in this set
+     */
+    private final long mask;
+    /**
+     * Sorted names that have no bit position, or null
+     */
+    private final String[] overflow;
 
     public Chains(String... chains) {
-        this.chains = new HashSet<>(Arrays.asList(chains));
+        this(Arrays.asList(chains));
     }
 
-    @JsonCreator
     public Chains(Set<String> chains) {
-        this.chains = new HashSet<>(chains);
+        this((Collection<String>) chains);
+    }
+
+    private Chains(Collection<String> chains) {
+        long mask = 0;
+        TreeSet<String> overflow = null;
+        for (String chain : chains) {
+            int bit = ChainNames.register(chain);
+            if (bit >= 0)
+                mask |= 1L << bit;
+            else {
+                if (overflow == null)
+                    overflow = new TreeSet<>();
+                overflow.add(chain);
+            }
+        }
+        this.all = false;
+        this.mask = mask;
+        this.overflow = overflow == null ? null : overflow.toArray(new String[overflow.size()]);
     }
 
-    private Chains(HashSet<String> chains) {
-        this.chains = chains;
+    private Chains(boolean all, long mask, String[] overflow) {
+        this.all = all;
+        this.mask = mask;
+        this.overflow = overflow == null || overflow.length == 0 ? null : overflow;
+    }
+
+    /**
+     * Returns canonical (interned if possible) chains object for the set of names
+     *
+     * @param chains chain names
+     * @return chains object
+     */
+    public static Chains of(String... chains) {
+        return canonical(new Chains(chains));
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    static Chains fromJson(Set<String> chains) {
+        return chains == null ? ALL : canonical(new Chains(chains));
+    }
+
+    private static void intern(Chains chains) {
+        INTERNED.putIfAbsent(chains.mask, chains);
+    }
+
+    private static Chains create(long mask, String[] overflow) {
+        if (overflow == null || overflow.length == 0) {
+            Chains interned = INTERNED.get(mask);
+            if (interned != null)
+                return interned;
+            if (Long.bitCount(mask) == 1) {
+                // Single chains are interned on demand (their number is bounded by the number of bit positions)
+                Chains chains = new Chains(false, mask, null);
+                interned = INTERNED.putIfAbsent(mask, chains);
+                return interned == null ? chains : interned;
+            }
+        }
+        return new Chains(false, mask, overflow);
+    }
+
+    private static Chains canonical(Chains chains) {
+        return chains.all ? ALL : create(chains.mask, chains.overflow);
     }
 
     @JsonValue
     private Set<String> getChains() {
-//        if (chains == null)
-//            return null; //throw new RuntimeException("Serialization of ALL chains is not implemented.");
-        return chains;
+        if (all)
+            return null;
+        return new HashSet<>(toList());
+    }
+
+    private List<String> toList() {
+        List<String> result = new ArrayList<>(Long.bitCount(mask) + (overflow == null ? 0 : overflow.length));
+        long m = mask;
+        while (m != 0) {
+            int bit = Long.numberOfTrailingZeros(m);
+            result.add(ChainNames.name(bit));
+            m &= m - 1;
+        }
+        if (overflow != null)
+            result.addAll(Arrays.asList(overflow));
+        return result;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public Iterator<String> iterator() {
-        return chains == null ? Collections.EMPTY_LIST.iterator() : Collections.unmodifiableCollection(chains).iterator();
+        return all ? Collections.EMPTY_LIST.iterator() : Collections.unmodifiableList(toList()).iterator();
     }
 
     public Chains merge(Chains other) {
-        if (chains == null || other.chains == null)
+        if (all || other.all)
             return ALL;
 
-        if (other.chains.equals(this.chains))
+        if (other.equals(this))
             return this;
 
-        HashSet<String> s = new HashSet<>(this.chains);
-        s.addAll(other.chains);
-        return new Chains(s);
+        long m = mask | other.mask;
+        String[] o = mergeOverflow(overflow, other.overflow);
+        if (m == mask && Arrays.equals(o, overflow))
+            return this;
+        if (m == other.mask && Arrays.equals(o, other.overflow))
+            return other;
+        return create(m, o);
     }
 
     public Chains intersection(Chains other) {
-        if (chains == null && other.chains == null)
+        if (all && other.all)
             return ALL;
 
-        if (chains == null || (other.chains != null && this.chains.containsAll(other.chains)))
+        if (all || (!other.all && containsNonAll(other)))
             return other;
 
-        if (other.chains == null || other.chains.containsAll(this.chains))
+        if (other.all || other.containsNonAll(this))
             return this;
 
-        HashSet<String> s = new HashSet<>();
-        s.addAll(this.chains);
-        s.retainAll(other.chains);
-        return new Chains(s);
+        return create(mask & other.mask, intersectOverflow(overflow, other.overflow));
     }
 
     public boolean contains(Chains other) {
-        return intersection(other).equals(other);
+        if (all)
+            return true;
+        if (other.all)
+            return false;
+        return containsNonAll(other);
+    }
+
+    private boolean containsNonAll(Chains other) {
+        if ((other.mask & ~mask) != 0)
+            return false;
+        if (other.overflow == null)
+            return true;
+        if (overflow == null)
+            return false;
+        for (String s : other.overflow)
+            if (Arrays.binarySearch(overflow, s) < 0)
+                return false;
+        return true;
     }
 
     public boolean isEmpty() {
-        return chains != null && chains.isEmpty();
+        return !all && mask == 0 && overflow == null;
     }
 
     public boolean contains(String chain) {
-        if (this.chains == null)
+        if (all)
             return true;
-        return chains.contains(chain);
+        int bit = ChainNames.bit(chain);
+        if (bit >= 0)
+            return (mask & (1L << bit)) != 0;
+        return overflow != null && Arrays.binarySearch(overflow, chain) >= 0;
     }
 
     public boolean intersects(Chains other) {
-        if (other.chains == null && this.chains == null)
+        if (other.all && this.all)
             return true;
 
-        if (other.chains == null)
-            return !this.chains.isEmpty();
+        if (other.all)
+            return !this.isEmpty();
+
+        if (this.all)
+            return !other.isEmpty();
+
+        if ((mask & other.mask) != 0)
+            return true;
 
-        if (this.chains == null)
-            return !other.chains.isEmpty();
+        if (overflow == null || other.overflow == null)
+            return false;
 
-        for (String s2e : other.chains)
-            if (chains.contains(s2e))
+        for (String s : other.overflow)
+            if (Arrays.binarySearch(overflow, s) >= 0)
                 return true;
 
         return false;
     }
 
+    private static String[] mergeOverflow(String[] a, String[] b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        TreeSet<String> s = new TreeSet<>(Arrays.asList(a));
+        s.addAll(Arrays.asList(b));
+        return s.toArray(new String[s.size()]);
+    }
+
+    private static String[] intersectOverflow(String[] a, String[] b) {
+        if (a == null || b == null)
+            return null;
+        TreeSet<String> s = new TreeSet<>(Arrays.asList(a));
+        s.retainAll(Arrays.asList(b));
+        return s.toArray(new String[s.size()]);
+    }
+
     /**
      * Parse chains including TCR, TR, IG and ALL abbreviations, can parse coma-separated list.
      *
@@ -192,7 +332,7 @@ public final class Chains implements Iterable<String> {
      */
     public static Chains parse(String value) {
         String[] split = value.split(",");
-        Chains chains = new Chains();
+        Chains chains = EMPTY;
         for (String s : split)
             chains = chains.merge(parse0(s.trim()));
         return chains;
@@ -208,7 +348,7 @@ public final class Chains implements Iterable<String> {
             case "all":
                 return Chains.ALL;
         }
-        return new Chains(value);
+        return of(value);
     }
 
     @Override
@@ -216,24 +356,27 @@ public final class Chains implements Iterable<String> {
         if (this == o) return true;
         if (!(o instanceof Chains)) return false;
 
-        Chains strings = (Chains) o;
+        Chains other = (Chains) o;
 
-        return chains != null ? chains.equals(strings.chains) : strings.chains == null;
+        return all == other.all && mask == other.mask && Arrays.equals(overflow, other.overflow);
     }
 
     @Override
     public int hashCode() {
-        return chains != null ? chains.hashCode() : 0;
+        if (all)
+            return 0;
+        return 31 * Long.hashCode(mask) + Arrays.hashCode(overflow) + 1;
     }
 
     @Override
     public String toString() {
-        if (chains == null)
+        if (all)
             return "ALL";
-        else if (chains.isEmpty())
+        else if (isEmpty())
             return "";
         else {
-            String[] c = chains.toArray(new String[chains.size()]);
+            List<String> list = toList();
+            String[] c = list.toArray(new String[list.size()]);
             Arrays.sort(c);
             StringBuilder b = new StringBuilder();
             for (int i = 0; ; i++) {
@@ -244,4 +387,57 @@ public final class Chains implements Iterable<String> {
             }
         }
     }
+
+    /**
+     * Global registry of chain names, assigning bit positions to chain names in order of first use
+     */
+    static final class ChainNames {
+        /**
+         * Maximal number of names with bit positions
+         */
+        static final int CAPACITY = 64;
+        private static final ConcurrentHashMap<String, Integer> bits = new ConcurrentHashMap<>();
+        private static final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(CAPACITY);
+        private static int size = 0;
+
+        static {
+            for (String name : new String[]{"TRA", "TRB", "TRG", "TRD", "IGH", "IGK", "IGL"})
+                register(name);
+        }
+
+        private ChainNames() {
+        }
+
+        /**
+         * Returns bit position of the name or -1 if name has no assigned position
+         */
+        static int bit(String name) {
+            Integer bit = bits.get(name);
+            return bit == null ? -1 : bit;
+        }
+
+        /**
+         * Returns bit position of the name, assigning new position if necessary. Returns -1 if there are no free
+         * positions.
+         */
+        static int register(String name) {
+            Integer bit = bits.get(name);
+            if (bit != null)
+                return bit;
+            synchronized (ChainNames.class) {
+                bit = bits.get(name);
+                if (bit != null)
+                    return bit;
+                if (size == CAPACITY)
+                    return -1;
+                names.set(size, name);
+                bits.put(name, size);
+                return size++;
+            }
+        }
+
+        static String name(int bit) {
+            return names.get(bit);
+        }
+    }
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+
+/**
+ * Columnar result of batch gene feature extraction from a library (see {@link VDJCLibrary#extract(GeneFeature,
+ * java.util.function.Predicate, boolean)}).
+ *
+ * Sequences of all genes are packed into a single array of letter codes; sequence of i-th gene occupies range
+ * {@code [offsets[i], offsets[i + 1])} of this array. Only genes where the feature is available are included, in
+ * ordinal order.
+ */
+public final class FeatureBatch {
+    private final VDJCLibrary library;
+    private final GeneFeature feature;
+    private final int[] ordinals;
+    private final int[] offsets;
+    private final byte[] codes;
+    /**
+     * Null if translation was not requested
+     */
+    private final int[] aaOffsets;
+    /**
+     * Null if translation was not requested
+     */
+    private final byte[] aaCodes;
+    /**
+     * aaTranslated[i] is false if reading frame is not defined for i-th gene
+     */
+    private final boolean[] aaTranslated;
+
+    private FeatureBatch(VDJCLibrary library, GeneFeature feature, int[] ordinals, int[] offsets, byte[] codes,
+                         int[] aaOffsets, byte[] aaCodes, boolean[] aaTranslated) {
+        this.library = library;
+        this.feature = feature;
+        this.ordinals = ordinals;
+        this.offsets = offsets;
+        this.codes = codes;
+        this.aaOffsets = aaOffsets;
+        this.aaCodes = aaCodes;
+        this.aaTranslated = aaTranslated;
+    }
+
+    /**
+     * Packs extracted sequences into columnar form.
+     *
+     * @param library  library
+     * @param feature  extracted feature
+     * @param genes    genes
+     * @param seqs     feature sequences of genes (null elements are skipped)
+     * @param aaSeqs   translated sequences (null elements mean that reading frame is not defined) or null if
+     *                 translation was not requested
+     */
+    static FeatureBatch pack(VDJCLibrary library, GeneFeature feature, VDJCGene[] genes,
+                             NucleotideSequence[] seqs, AminoAcidSequence[] aaSeqs) {
+        int count = 0, totalLength = 0, totalAALength = 0;
+        for (int i = 0; i < genes.length; ++i)
+            if (seqs[i] != null) {
+                ++count;
+                totalLength += seqs[i].size();
+                if (aaSeqs != null && aaSeqs[i] != null)
+                    totalAALength += aaSeqs[i].size();
+            }
+
+        int[] ordinals = new int[count];
+        int[] offsets = new int[count + 1];
+        byte[] codes = new byte[totalLength];
+        int[] aaOffsets = aaSeqs == null ? null : new int[count + 1];
+        byte[] aaCodes = aaSeqs == null ? null : new byte[totalAALength];
+        boolean[] aaTranslated = aaSeqs == null ? null : new boolean[count];
+
+        int j = 0;
+        for (int i = 0; i < genes.length; ++i) {
+            if (seqs[i] == null)
+                continue;
+            ordinals[j] = genes[i].getOrdinal();
+            offsets[j + 1] = copy(seqs[i], codes, offsets[j]);
+            if (aaSeqs != null) {
+                aaTranslated[j] = aaSeqs[i] != null;
+                aaOffsets[j + 1] = aaSeqs[i] == null ? aaOffsets[j] : copy(aaSeqs[i], aaCodes, aaOffsets[j]);
+            }
+            ++j;
+        }
+
+        return new FeatureBatch(library, feature, ordinals, offsets, codes, aaOffsets, aaCodes, aaTranslated);
+    }
+
+    private static int copy(Sequence<?> seq, byte[] dest, int offset) {
+        for (int i = 0; i < seq.size(); ++i)
+            dest[offset++] = seq.codeAt(i);
+        return offset;
+    }
+
+    /**
+     * Returns source library
+     *
+     * @return source library
+     */
+    public VDJCLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * Returns extracted gene feature
+     *
+     * @return extracted gene feature
+     */
+    public GeneFeature getFeature() {
+        return feature;
+    }
+
+    /**
+     * Returns number of genes in this batch
+     *
+     * @return number of genes in this batch
+     */
+    public int size() {
+        return ordinals.length;
+    }
+
+    /**
+     * Returns ordinal of i-th gene
+     *
+     * @param i index in this batch
+     * @return ordinal of i-th gene
+     */
+    public int getOrdinal(int i) {
+        return ordinals[i];
+    }
+
+    /**
+     * Returns i-th gene
+     *
+     * @param i index in this batch
+     * @return i-th gene
+     */
+    public VDJCGene getGene(int i) {
+        return library.getGene(ordinals[i]);
+    }
+
+    /**
+     * Returns length of the feature sequence of i-th gene
+     *
+     * @param i index in this batch
+     * @return length of the feature sequence of i-th gene
+     */
+    public int getLength(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * Returns offset of the feature sequence of i-th gene in packed codes array
+     *
+     * @param i index in this batch
+     * @return offset of the feature sequence of i-th gene in packed codes array
+     */
+    public int getOffset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * Returns packed nucleotide codes of all sequences. Returned array must not be modified.
+     *
+     * @return packed nucleotide codes
+     */
+    public byte[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * Creates feature sequence of i-th gene from packed codes
+     *
+     * @param i index in this batch
+     * @return feature sequence of i-th gene
+     */
+    public NucleotideSequence getSequence(int i) {
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder()
+                .ensureCapacity(getLength(i));
+        for (int k = offsets[i]; k < offsets[i + 1]; ++k)
+            builder.append(codes[k]);
+        return builder.createAndDestroy();
+    }
+
+    /**
+     * Returns whether amino acid sequences were calculated for this batch
+     *
+     * @return whether amino acid sequences were calculated for this batch
+     */
+    public boolean isTranslated() {
+        return aaCodes != null;
+    }
+
+    /**
+     * Returns packed amino acid codes of all translated sequences. Returned array must not be modified.
+     *
+     * @return packed amino acid codes
+     */
+    public byte[] getAACodes() {
+        checkTranslated();
+        return aaCodes;
+    }
+
+    /**
+     * Returns offset of the amino acid sequence of i-th gene in packed amino acid codes array
+     *
+     * @param i index in this batch
+     * @return offset of the amino acid sequence of i-th gene in packed amino acid codes array
+     */
+    public int getAAOffset(int i) {
+        checkTranslated();
+        return aaOffsets[i];
+    }
+
+    /**
+     * Returns translated feature sequence of i-th gene, or null if reading frame is not defined for the feature of
+     * this gene
+     *
+     * @param i index in this batch
+     * @return translated feature sequence or null
+     */
+    public AminoAcidSequence getAASequence(int i) {
+        checkTranslated();
+        if (!aaTranslated[i])
+            return null;
+        SequenceBuilder<AminoAcidSequence> builder = AminoAcidSequence.ALPHABET.createBuilder()
+                .ensureCapacity(aaOffsets[i + 1] - aaOffsets[i]);
+        for (int k = aaOffsets[i]; k < aaOffsets[i + 1]; ++k)
+            builder.append(aaCodes[k]);
+        return builder.createAndDestroy();
+    }
+
+    private void checkTranslated() {
+        if (aaCodes == null)
+            throw new IllegalStateException("Translation was not requested for this batch.");
+    }
+}
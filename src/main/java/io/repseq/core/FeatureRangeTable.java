@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.Range;
+
+import java.util.*;
+
+/**
+ * Precomputed positions of all standard (named) gene features (see {@link GeneFeature#getFeaturesByName()}) for a
+ * particular partitioning. Positions are stored in a single flat array, so range lookup for a standard feature is
+ * reduced to array indexing.
+ */
+final class FeatureRangeTable {
+    static final byte AVAILABLE = 0, UNAVAILABLE = 1, INCONSISTENT = 2;
+
+    /**
+     * Begin / end positions for each reference range of each standard feature
+     */
+    private final int[] positions;
+    /**
+     * Feature lengths or -1 if not available
+     */
+    private final int[] lengths;
+    /**
+     * Status of each feature, see constants
+     */
+    private final byte[] status;
+
+    private FeatureRangeTable(int[] positions, int[] lengths, byte[] status) {
+        this.positions = positions;
+        this.lengths = lengths;
+        this.status = status;
+    }
+
+    /**
+     * Returns status of the feature with specified index
+     */
+    byte getStatus(int featureIndex) {
+        return status[featureIndex];
+    }
+
+    /**
+     * Returns length of the feature with specified index or -1 if it is not available
+     */
+    int getLength(int featureIndex) {
+        return lengths[featureIndex];
+    }
+
+    /**
+     * Returns i-th range of the feature with specified index. Feature must be available.
+     */
+    Range getRange(int featureIndex, int i) {
+        int p = Layout.offsets[featureIndex] + 2 * i;
+        return new Range(positions[p], positions[p + 1]);
+    }
+
+    /**
+     * Returns ranges of the feature with specified index, null if feature is not available.
+     *
+     * @throws IllegalArgumentException if feature partition is inconsistent
+     */
+    Range[] getRanges(int featureIndex) {
+        switch (status[featureIndex]) {
+            case UNAVAILABLE:
+                return null;
+            case INCONSISTENT:
+                throw new IllegalArgumentException("Inconsistent feature partition.");
+        }
+        Range[] result = new Range[Layout.features[featureIndex].size()];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = getRange(featureIndex, i);
+        return result;
+    }
+
+    /**
+     * Calculates positions of all standard features for specified partitioning
+     *
+     * @param partitioning partitioning
+     * @return table
+     */
+    static FeatureRangeTable build(SequencePartitioning partitioning) {
+        GeneFeature[] features = Layout.features;
+        int[] positions = new int[Layout.size];
+        int[] lengths = new int[features.length];
+        byte[] status = new byte[features.length];
+        Arrays.fill(positions, -1);
+        for (int f = 0; f < features.length; ++f) {
+            GeneFeature feature = features[f];
+            int offset = Layout.offsets[f];
+            int length = 0;
+            Range previous = null;
+            for (int i = 0; i < feature.size(); ++i) {
+                GeneFeature.ReferenceRange range = feature.getReferenceRange(i);
+                int begin = partitioning.getPosition(range.begin),
+                        end = partitioning.getPosition(range.end);
+                if (begin < 0 || end < 0) {
+                    // Same order of checks as in SequencePartitioning.getRanges(...)
+                    if (status[f] == AVAILABLE)
+                        status[f] = UNAVAILABLE;
+                    length = -1;
+                    break;
+                }
+                positions[offset + 2 * i] = begin;
+                positions[offset + 2 * i + 1] = end;
+                length += Math.abs(end - begin);
+                Range current = new Range(begin, end);
+                if (previous != null && status[f] == AVAILABLE && previous.intersectsWith(current) &&
+                        current.isReverse() == previous.isReverse())
+                    status[f] = INCONSISTENT;
+                previous = current;
+            }
+            lengths[f] = length;
+        }
+        return new FeatureRangeTable(positions, lengths, status);
+    }
+
+    /**
+     * Returns index of standard gene feature, or -1 if feature is not one of the standard features
+     *
+     * @param feature gene feature
+     * @return index of the feature in the table or -1
+     */
+    static int index(GeneFeature feature) {
+        // Cached in the feature object: 0 - not yet calculated, 1 - not a standard feature, i + 2 - index i
+        int idx = feature.standardIndex;
+        if (idx == 0) {
+            Integer i = Layout.indices.get(feature);
+            feature.standardIndex = idx = i == null ? 1 : i + 2;
+        }
+        return idx - 2;
+    }
+
+    /**
+     * Layout of the table, shared between all tables
+     */
+    private static final class Layout {
+        static final GeneFeature[] features;
+        static final Map<GeneFeature, Integer> indices = new HashMap<>();
+        static final int[] offsets;
+        static final int size;
+
+        static {
+            // Sorting by name for deterministic layout
+            TreeMap<String, GeneFeature> byName = new TreeMap<>(GeneFeature.getFeaturesByName());
+            List<GeneFeature> list = new ArrayList<>();
+            for (GeneFeature feature : byName.values())
+                if (!indices.containsKey(feature)) {
+                    indices.put(feature, list.size());
+                    list.add(feature);
+                }
+            features = list.toArray(new GeneFeature[list.size()]);
+            offsets = new int[features.length];
+            int s = 0;
+            for (int i = 0; i < features.length; ++i) {
+                offsets[i] = s;
+                s += 2 * features[i].size();
+            }
+            size = s;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.milaboratory.primitivio.annotations.Serializable;
 import com.milaboratory.util.ArrayIterator;
 import com.milaboratory.util.ParseUtil;
+import io.repseq.util.BoundedConcurrentCache;
 import io.repseq.util.Doc;
 
 import java.io.IOException;
@@ -202,6 +203,14 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
 
     //regions are sorted in natural ordering using indexes
     final ReferenceRange[] regions;
+    /**
+     * Cached hash code (0 = not yet calculated)
+     */
+    private transient int hash;
+    /**
+     * Cached index in {@link FeatureRangeTable} (see {@link FeatureRangeTable#index(GeneFeature)})
+     */
+    transient int standardIndex;
 
     public GeneFeature(final GeneFeature... features) {
         if (features.length == 0)
@@ -314,12 +323,20 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
 
         GeneFeature feature = (GeneFeature) o;
 
+        // Fast negative answer if both hash codes are already calculated
+        int h1 = hash, h2 = feature.hash;
+        if (h1 != 0 && h2 != 0 && h1 != h2)
+            return false;
+
         return Arrays.equals(regions, feature.regions);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(regions);
+        int h = hash;
+        if (h == 0)
+            hash = h = Arrays.hashCode(regions);
+        return h;
     }
 
     private ReferenceRange firstRegion() {
@@ -506,10 +523,15 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
      * Special value
      */
     private static final ReferencePoint NULL_FRAME = new ReferencePoint(BasicReferencePoint.V5UTRBegin);
+    /**
+     * Maximal number of entries in each of static caches of GeneFeature
+     */
+    public static final int STATIC_CACHE_CAPACITY = 4096;
     /**
      * Cache for getFrameReference method
      */
-    private static final Map<GeneFeature, ReferencePoint> frameReferenceCache = new HashMap<>();
+    private static final BoundedConcurrentCache<GeneFeature, ReferencePoint> frameReferenceCache =
+            new BoundedConcurrentCache<>(STATIC_CACHE_CAPACITY);
 
     /**
      * Returns reference point that is triplet boundary (so defines reading frame) inside provided gene feature or
@@ -518,31 +540,40 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
      * @param feature gene feature
      * @return reference point that is triplet boundary (so defines reading frame) inside provided gene feature or null
      */
-    public static synchronized ReferencePoint getFrameReference(GeneFeature feature) {
+    public static ReferencePoint getFrameReference(GeneFeature feature) {
         ReferencePoint rp = frameReferenceCache.get(feature);
         if (rp == null) {
             OUTER:
             for (ReferenceRange region : feature.regions)
                 for (ReferencePoint intermediatePoint : region.getIntermediatePoints())
                     if (intermediatePoint.isTripletBoundary()) {
-                        frameReferenceCache.put(feature, rp = intermediatePoint);
+                        rp = intermediatePoint;
                         break OUTER;
                     }
-            if (rp == null)
-                // Caching null result
-                frameReferenceCache.put(feature, rp = NULL_FRAME);
+            // Caching null result as NULL_FRAME
+            rp = frameReferenceCache.putIfAbsent(feature, rp == null ? NULL_FRAME : rp);
         }
         return rp == NULL_FRAME ? null : rp;
     }
 
+    /**
+     * Returns statistics of the cache used by {@link #getFrameReference(GeneFeature)}
+     *
+     * @return statistics of the cache used by {@link #getFrameReference(GeneFeature)}
+     */
+    public static BoundedConcurrentCache.Stats getFrameReferenceCacheStats() {
+        return frameReferenceCache.getStats();
+    }
+
     /**
      * Special value
      */
     private static final GeneFeature NULL_GENE_FEATURE = new GeneFeature(UTR5Begin, UTR5Begin);
     /**
-     * Cache for getFrameReference method
+     * Cache for getCodingGeneFeature method
      */
-    private static final Map<GeneFeature, GeneFeature> codingGeneFeaturesCache = new HashMap<>();
+    private static final BoundedConcurrentCache<GeneFeature, GeneFeature> codingGeneFeaturesCache =
+            new BoundedConcurrentCache<>(STATIC_CACHE_CAPACITY);
 
     /**
      * Returns coding gene feature contained in input gene feature
@@ -550,7 +581,7 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
      * @param feature input gene feature
      * @return coding gene feature contained in input gene feature or null
      */
-    public static synchronized GeneFeature getCodingGeneFeature(GeneFeature feature) {
+    public static GeneFeature getCodingGeneFeature(GeneFeature feature) {
         GeneFeature result = codingGeneFeaturesCache.get(feature);
         if (result == null) {
 
@@ -583,15 +614,24 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
 
             if (resultRanges.isEmpty())
                 // Caching null result
-                codingGeneFeaturesCache.put(feature, result = NULL_GENE_FEATURE);
+                result = codingGeneFeaturesCache.putIfAbsent(feature, NULL_GENE_FEATURE);
             else
-                codingGeneFeaturesCache.put(feature, result = new GeneFeature(
+                result = codingGeneFeaturesCache.putIfAbsent(feature, new GeneFeature(
                         resultRanges.toArray(new ReferenceRange[resultRanges.size()]), true));
 
         }
         return result == NULL_GENE_FEATURE ? null : result;
     }
 
+    /**
+     * Returns statistics of the cache used by {@link #getCodingGeneFeature(GeneFeature)}
+     *
+     * @return statistics of the cache used by {@link #getCodingGeneFeature(GeneFeature)}
+     */
+    public static BoundedConcurrentCache.Stats getCodingGeneFeatureCacheStats() {
+        return codingGeneFeaturesCache.getStats();
+    }
+
     private static ReferenceRange[] merge(final ReferenceRange[] ranges) {
         if (ranges.length == 1)
             return ranges;
@@ -752,8 +792,8 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
         throw new RuntimeException();
     }
 
-    static Map<String, GeneFeature> featuresByName = null;
-    static Map<GeneFeature, String> nameByFeature = null;
+    static volatile Map<String, GeneFeature> featuresByName = null;
+    static volatile Map<GeneFeature, String> nameByFeature = null;
 
     private static void ensureInitialized() {
         if (featuresByName == null) {
@@ -771,8 +811,8 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
                                 fbn.put(name.toLowerCase(), value);
                                 nbf.put(value, name);
                             }
-                        featuresByName = fbn;
                         nameByFeature = nbf;
+                        featuresByName = fbn;
                     } catch (IllegalAccessException e) {
                         throw new RuntimeException(e);
                     }
@@ -791,7 +831,68 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
         return nameByFeature.get(point);
     }
 
+    /**
+     * Canonical instances, see {@link #intern(GeneFeature)}
+     */
+    private static final BoundedConcurrentCache<GeneFeature, GeneFeature> internCache =
+            new BoundedConcurrentCache<>(STATIC_CACHE_CAPACITY);
+    /**
+     * String -> parsed (interned) gene feature
+     */
+    private static final BoundedConcurrentCache<String, GeneFeature> parseCache =
+            new BoundedConcurrentCache<>(STATIC_CACHE_CAPACITY);
+
+    /**
+     * Returns canonical instance of the gene feature equal to the provided one. For well-known features the
+     * corresponding constant (e.g. {@link #CDR3}) is returned. Equal features interned at nearby moments of time
+     * resolve to the same instance, which makes equality checks and hash map lookups cheap. As interning cache is
+     * bounded, this is best-effort: callers must still compare features using equals.
+     *
+     * @param feature gene feature
+     * @return canonical instance equal to the provided one
+     */
+    public static GeneFeature intern(GeneFeature feature) {
+        if (feature == null)
+            return null;
+        GeneFeature canonical = internCache.get(feature);
+        if (canonical != null)
+            return canonical;
+        String name = getNameByFeature(feature);
+        if (name != null)
+            canonical = getFeatureByName(name);
+        if (canonical == null)
+            canonical = feature;
+        // Calculating and caching hash code
+        canonical.hashCode();
+        return internCache.putIfAbsent(canonical, canonical);
+    }
+
+    /**
+     * Returns statistics of the cache used by {@link #parse(String)}
+     *
+     * @return statistics of the cache used by {@link #parse(String)}
+     */
+    public static BoundedConcurrentCache.Stats getParseCacheStats() {
+        return parseCache.getStats();
+    }
+
+    /**
+     * Parses gene feature. Returns interned instance (see {@link #intern(GeneFeature)}), results are cached.
+     *
+     * @param string string representation
+     * @return gene feature
+     */
     public static GeneFeature parse(String string) {
+        GeneFeature result = parseCache.get(string);
+        if (result != null)
+            return result;
+        result = parse0(string);
+        if (result == null)
+            return null;
+        return parseCache.putIfAbsent(string, intern(result));
+    }
+
+    private static GeneFeature parse0(String string) {
         string = string.replaceAll(" ", "");
         if ("null".equals(string))
             return null;
@@ -18,6 +18,7 @@ package io.repseq.core;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.sequence.Seq;
 import com.milaboratory.core.sequence.SeqBuilder;
+import com.milaboratory.core.sequence.Sequence;
 
 /**
  * @author Dmitry Bolotin
@@ -49,4 +50,62 @@ public abstract class PartitionedSequence<S extends Seq<S>> {
             builder.append(getSequence(ranges[i]));
         return builder.createAndDestroy();
     }
+
+    /**
+     * Writes letter codes of the feature sequence into caller-supplied buffer, starting from specified offset. For
+     * nucleotide sequences codes of A, C, G, T are 0..3, so the buffer can be used directly as 2-bit codes if the
+     * sequence contains no wildcards (codes greater than 3).
+     *
+     * Positions of feature regions are taken directly from the partitioning, without intermediate {@link Range}
+     * objects; subclasses backed by in-memory sequences copy codes without any allocation (see {@link #copyCodes(int,
+     * int, byte[], int)}).
+     *
+     * @param feature gene feature
+     * @param buffer  destination buffer
+     * @param offset  position in destination buffer to start writing from
+     * @return number of written codes (length of the feature), or -1 if feature is not available in this sequence
+     * @throws IndexOutOfBoundsException if the feature doesn't fit into the buffer
+     */
+    public int getFeatureCodes(GeneFeature feature, byte[] buffer, int offset) {
+        SequencePartitioning partitioning = getPartitioning();
+        int length = partitioning.getLength(feature);
+        if (length < 0)
+            return -1;
+        if (offset < 0 || buffer.length - offset < length)
+            throw new IndexOutOfBoundsException("Feature of length " + length + " doesn't fit into buffer of size " +
+                    buffer.length + " at offset " + offset);
+        for (int i = 0; i < feature.size(); ++i) {
+            GeneFeature.ReferenceRange range = feature.getReferenceRange(i);
+            int begin = partitioning.getPosition(range.begin),
+                    end = partitioning.getPosition(range.end);
+            copyCodes(begin, end, buffer, offset);
+            offset += Math.abs(end - begin);
+        }
+        return length;
+    }
+
+    /**
+     * Copies letter codes of the sequence region into buffer. If {@code begin > end}, region is reversed (see
+     * {@link Range#isReverse()}). Default implementation extracts the region with {@link #getSequence(Range)},
+     * subclasses backed by in-memory sequences should override it with an allocation-free implementation.
+     *
+     * @param begin  region begin
+     * @param end    region end
+     * @param buffer destination buffer
+     * @param offset position in destination buffer
+     */
+    protected void copyCodes(int begin, int end, byte[] buffer, int offset) {
+        copyCodes(getSequence(new Range(begin, end)), buffer, offset);
+    }
+
+    /**
+     * Copies all letter codes of sequence into buffer
+     */
+    static void copyCodes(Seq<?> seq, byte[] buffer, int offset) {
+        if (!(seq instanceof Sequence))
+            throw new IllegalArgumentException("Code extraction is supported only for letter sequences.");
+        Sequence<?> s = (Sequence<?>) seq;
+        for (int i = 0; i < s.size(); ++i)
+            buffer[offset + i] = s.codeAt(i);
+    }
 }
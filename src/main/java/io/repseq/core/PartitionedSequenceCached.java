@@ -15,21 +15,107 @@
  */
 package io.repseq.core;
 
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.Seq;
+import com.milaboratory.core.sequence.TranslationParameters;
 
 import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class PartitionedSequenceCached<S extends Seq<S>> extends PartitionedSequence<S> {
     private static final Object NULL_SEQUENCE = new Object();
-    final ConcurrentHashMap<GeneFeature, Object> cache = new ConcurrentHashMap<>();
+    /**
+     * Nucleotide features are stored by {@link GeneFeature} key, amino acid features by {@link AAFeatureKey}
+     */
+    final ConcurrentHashMap<Object, Object> cache = new ConcurrentHashMap<>();
 
     @Override
-    public synchronized S getFeature(GeneFeature feature) {
-        Object seq;
+    public S getFeature(GeneFeature feature) {
         // (IMPORTANT) Exactly the same reference must be returned for the same input for correct serialization/deserialization
-        if ((seq = cache.get(feature)) == null && !cache.containsKey(feature))
-            cache.put(feature, (seq = super.getFeature(feature)) == null ? NULL_SEQUENCE : seq);
+        // Cache hits are lock-free; in case of a race, the first calculated value wins and is returned to all callers
+        Object seq = cache.get(feature);
+        if (seq == null) {
+            Object calculated = super.getFeature(feature);
+            if (calculated == null)
+                calculated = NULL_SEQUENCE;
+            if ((seq = cache.putIfAbsent(feature, calculated)) == null)
+                seq = calculated;
+        }
         return seq == NULL_SEQUENCE ? null : (S) seq;
     }
-}
 
+    /**
+     * {@inheritDoc}
+     *
+     * If the feature sequence is already cached, codes are copied from it.
+     */
+    @Override
+    public int getFeatureCodes(GeneFeature feature, byte[] buffer, int offset) {
+        Object seq = cache.get(feature);
+        if (seq == null)
+            return super.getFeatureCodes(feature, buffer, offset);
+        if (seq == NULL_SEQUENCE)
+            return -1;
+        int length = ((Seq<?>) seq).size();
+        if (offset < 0 || buffer.length - offset < length)
+            throw new IndexOutOfBoundsException("Feature of length " + length + " doesn't fit into buffer of size " +
+                    buffer.length + " at offset " + offset);
+        copyCodes((Seq<?>) seq, buffer, offset);
+        return length;
+    }
+
+    /**
+     * Returns amino acid sequence of the feature, translated using translation parameters provided by the
+     * partitioning (see {@link SequencePartitioning#getTranslationParameters(GeneFeature)}). Translated sequences are
+     * cached along with nucleotide feature sequences, so each feature is translated only once.
+     *
+     * @param feature gene feature
+     * @return translated feature sequence, or null if feature is not available or reading frame is not defined for it
+     * @throws IllegalStateException if this is not a nucleotide sequence
+     */
+    public AminoAcidSequence getAAFeature(GeneFeature feature) {
+        AAFeatureKey key = new AAFeatureKey(feature);
+        Object seq = cache.get(key);
+        if (seq == null) {
+            Object calculated = translateFeature(feature);
+            if (calculated == null)
+                calculated = NULL_SEQUENCE;
+            if ((seq = cache.putIfAbsent(key, calculated)) == null)
+                seq = calculated;
+        }
+        return seq == NULL_SEQUENCE ? null : (AminoAcidSequence) seq;
+    }
+
+    private AminoAcidSequence translateFeature(GeneFeature feature) {
+        S seq = getFeature(feature);
+        if (seq == null)
+            return null;
+        if (!(seq instanceof NucleotideSequence))
+            throw new IllegalStateException("Only nucleotide sequences can be translated.");
+        TranslationParameters parameters = getPartitioning().getTranslationParameters(feature);
+        if (parameters == null)
+            return null;
+        return AminoAcidSequence.translate((NucleotideSequence) seq, parameters);
+    }
+
+    /**
+     * Key of amino acid feature in the cache
+     */
+    private static final class AAFeatureKey {
+        final GeneFeature feature;
+
+        AAFeatureKey(GeneFeature feature) {
+            this.feature = feature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof AAFeatureKey && feature.equals(((AAFeatureKey) o).feature));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * feature.hashCode() + 17;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.milaboratory.primitivio.annotations.Serializable;
+import io.repseq.util.BoundedConcurrentCache;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -431,7 +432,26 @@ public final class ReferencePoint implements Comparable<ReferencePoint>, java.io
         return nameByPoint.get(point).get(0);
     }
 
+    /**
+     * String -> parsed reference point
+     */
+    private static final BoundedConcurrentCache<String, ReferencePoint> parseCache =
+            new BoundedConcurrentCache<>(GeneFeature.STATIC_CACHE_CAPACITY);
+
+    /**
+     * Parses reference point, results are cached.
+     *
+     * @param string string representation
+     * @return reference point
+     */
     public static ReferencePoint parse(String string) {
+        ReferencePoint result = parseCache.get(string);
+        if (result != null)
+            return result;
+        return parseCache.putIfAbsent(string, parse0(string));
+    }
+
+    private static ReferencePoint parse0(String string) {
         string = string.trim();
         int br = string.indexOf('(');
         ReferencePoint base;
@@ -27,6 +27,8 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
+import io.repseq.util.BoundedConcurrentCache;
+
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -41,6 +43,18 @@ import static io.repseq.core.BasicReferencePoint.TOTAL_NUMBER_OF_BASIC_REFERENCE
 @JsonSerialize(using = ReferencePoints.JSerializer.class)
 @JsonDeserialize(using = ReferencePoints.JDeserializer.class)
 public final class ReferencePoints extends AbstractReferencePoints<ReferencePoints> implements java.io.Serializable {
+    /**
+     * Maximal number of memoized translation parameters per object
+     */
+    private static final int TRANSLATION_PARAMETERS_MEMO_CAPACITY = 256;
+    /**
+     * If true, positions of standard gene features are precomputed on first request (see {@link FeatureRangeTable})
+     * and translation parameters are memoized
+     */
+    private transient boolean cachingEnabled;
+    private transient volatile FeatureRangeTable featureRangeTable;
+    private transient volatile BoundedConcurrentCache<Object, Object> translationParametersMemo;
+
     public ReferencePoints(int[] points) {
         super(points, BASIC_REFERENCE_POINTS_TO_CHECK);
     }
@@ -49,6 +63,46 @@ public final class ReferencePoints extends AbstractReferencePoints<ReferencePoin
         super(start, points, BASIC_REFERENCE_POINTS_TO_CHECK);
     }
 
+    /**
+     * Returns copy of this object with precomputation of standard gene feature positions and memoization of
+     * translation parameters enabled. Used for long-lived objects (like reference points of library genes).
+     *
+     * @return caching copy of this object, or this object if caching is already enabled
+     */
+    ReferencePoints withCaching() {
+        if (cachingEnabled)
+            return this;
+        ReferencePoints copy = new ReferencePoints(points);
+        copy.cachingEnabled = true;
+        return copy;
+    }
+
+    @Override
+    BoundedConcurrentCache<Object, Object> getTranslationParametersMemo() {
+        if (!cachingEnabled)
+            return null;
+        BoundedConcurrentCache<Object, Object> memo = translationParametersMemo;
+        if (memo == null)
+            synchronized (this) {
+                memo = translationParametersMemo;
+                if (memo == null)
+                    translationParametersMemo = memo =
+                            new BoundedConcurrentCache<>(TRANSLATION_PARAMETERS_MEMO_CAPACITY);
+            }
+        return memo;
+    }
+
+    @Override
+    FeatureRangeTable getFeatureRangeTable() {
+        if (!cachingEnabled)
+            return null;
+        FeatureRangeTable table = featureRangeTable;
+        if (table == null)
+            // Benign race: several threads may build equal tables
+            featureRangeTable = table = FeatureRangeTable.build(this);
+        return table;
+    }
+
     @Override
     protected int indexFromReferencePoint(ReferencePoint point) {
         // Checking reference point type
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+/**
+ * Lightweight view of reference points, shifted by a constant offset and with some of the points removed.
+ *
+ * Unlike {@link AbstractReferencePoints#move(int)} and {@link AbstractReferencePoints#without(ReferencePoint)},
+ * creation of a view neither copies the positions array nor re-validates order of points (shifting and removal of
+ * points can't break it). Views are consumed by {@link AbstractReferencePointsBuilder#setPositionsFrom(ReferencePointsView)}.
+ */
+public final class ReferencePointsView {
+    /**
+     * Original reference points
+     */
+    final AbstractReferencePoints<?> base;
+    /**
+     * Offset added to all positions
+     */
+    final int offset;
+    /**
+     * Bit i is set if i-th point is removed
+     */
+    final long removed;
+
+    ReferencePointsView(AbstractReferencePoints<?> base, int offset, long removed) {
+        if (base.points.length > 64)
+            throw new IllegalArgumentException("Too many reference points.");
+        this.base = base;
+        this.offset = offset;
+        this.removed = removed;
+    }
+
+    /**
+     * Returns view with all positions shifted by specified offset
+     *
+     * @param offset offset
+     * @return shifted view
+     */
+    public ReferencePointsView move(int offset) {
+        return new ReferencePointsView(base, this.offset + offset, removed);
+    }
+
+    /**
+     * Returns view without specified reference point
+     *
+     * @param referencePoint reference point to remove
+     * @return view without specified reference point
+     * @throws IllegalArgumentException if reference point is not supported by underlying reference points
+     */
+    public ReferencePointsView without(ReferencePoint referencePoint) {
+        int index = base.indexFromReferencePoint(referencePoint);
+        if (index < 0 || index >= base.points.length)
+            throw new IllegalArgumentException("Unsupported reference point: " + referencePoint);
+        return new ReferencePointsView(base, offset, removed | (1L << index));
+    }
+
+    /**
+     * Returns position of reference point in this view or -1 if point is not defined
+     *
+     * @param referencePoint reference point
+     * @return position of reference point or -1
+     */
+    public int getPosition(ReferencePoint referencePoint) {
+        int index = base.indexFromReferencePoint(referencePoint);
+        if (index >= 0 && index < base.points.length && (removed & (1L << index)) != 0)
+            return -1;
+        int position = base.getPosition(referencePoint);
+        return position < 0 ? -1 : position + offset;
+    }
+
+    /**
+     * Number of points (defined and undefined) in the underlying positions array
+     */
+    int size() {
+        return base.points.length;
+    }
+
+    /**
+     * Returns i-th position of the underlying array with offset applied, or -1 if point is not defined or removed
+     */
+    int positionAt(int index) {
+        if ((removed & (1L << index)) != 0)
+            return -1;
+        int position = base.points[index];
+        return position == -1 ? -1 : position + offset;
+    }
+
+    /**
+     * Returns basic reference point corresponding to i-th position
+     */
+    BasicReferencePoint basicReferencePointAt(int index) {
+        return base.basicReferencePointFromIndex(index);
+    }
+}
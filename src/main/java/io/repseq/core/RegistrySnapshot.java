@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.CachedSequenceProvider;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.KnownVDJCLibraryMetaFields;
+import io.repseq.dto.VDJCDataUtils;
+import io.repseq.dto.VDJCLibraryData;
+import io.repseq.seqbase.SequenceAddress;
+import io.repseq.seqbase.SequenceResolver;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static io.repseq.core.BinaryLibraryFormat.*;
+
+/**
+ * Snapshot of fully built {@link VDJCLibraryRegistry} state: all loaded libraries with their names and resolution
+ * contexts, library aliases, precomputed checksums and all resolved sequences of library genes (stored as known
+ * sequence fragments). Restoring registry from snapshot requires neither library resolution nor access to external
+ * sequence sources, nor checksum calculation.
+ *
+ * File layout (big-endian, libraries are encoded as in {@link BinaryLibraryFormat}):
+ *
+ * <pre>
+ * header:     magic "RSQIOSNP", int format version
+ * aliases:    int number of aliases, (alias name, library name) * number of aliases
+ * libraries:  int number of libraries, (name, boolean hasContext, [context path], library) * number of libraries
+ * </pre>
+ */
+final class RegistrySnapshot {
+    static final byte[] SNAPSHOT_MAGIC = "RSQIOSNP".getBytes(StandardCharsets.US_ASCII);
+    static final int SNAPSHOT_FORMAT_VERSION = 1;
+
+    private RegistrySnapshot() {
+    }
+
+    /**
+     * Writes snapshot of registry state
+     *
+     * @param registry registry
+     * @param output   output
+     */
+    static void write(VDJCLibraryRegistry registry, DataOutput output) throws IOException {
+        output.write(SNAPSHOT_MAGIC);
+        output.writeInt(SNAPSHOT_FORMAT_VERSION);
+
+        TreeMap<String, String> aliases = new TreeMap<>(registry.aliases);
+        output.writeInt(aliases.size());
+        for (Map.Entry<String, String> alias : aliases.entrySet()) {
+            writeString(alias.getKey(), output);
+            writeString(alias.getValue(), output);
+        }
+
+        List<VDJCLibrary> libraries = new ArrayList<>(registry.getLoadedLibraries());
+        Collections.sort(libraries);
+        output.writeInt(libraries.size());
+        for (VDJCLibrary library : libraries) {
+            writeString(library.getName(), output);
+            output.writeBoolean(library.getContext() != null);
+            if (library.getContext() != null)
+                writeString(library.getContext().toString(), output);
+            writeLibrary(resolvedLibraryData(library), output);
+        }
+    }
+
+    /**
+     * Creates library data with all resolved gene sequences embedded as known fragments and precomputed checksum
+     */
+    static VDJCLibraryData resolvedLibraryData(VDJCLibrary library) {
+        SequenceResolver resolver = library.getParent().getSequenceResolver();
+        VDJCDataUtils.FragmentsBuilder fragmentsBuilder = new VDJCDataUtils.FragmentsBuilder();
+        for (KnownSequenceFragmentData fragment : library.getData().getSequenceFragments())
+            fragmentsBuilder.addRegion(fragment);
+
+        Set<URI> origins = new HashSet<>();
+        for (VDJCGene gene : library.getGenes()) {
+            BaseSequence baseSequence = gene.getData().getBaseSequence();
+            // Sequences of mutated genes are resolved on gene creation, pure ones are resolved here
+            if (baseSequence.isPureOriginalSequence())
+                try {
+                    gene.getSequenceProvider().getRegion(gene.getPartitioning().getContainingRegion());
+                } catch (SequenceProviderIndexOutOfBoundsException e) {
+                    // Sequence is not available; it will be resolved in the same way after restoring from snapshot
+                }
+            origins.add(baseSequence.getOrigin());
+        }
+
+        for (URI origin : origins) {
+            CachedSequenceProvider<NucleotideSequence> provider =
+                    resolver.resolve(new SequenceAddress(library.getContext(), origin));
+            for (KnownSequenceFragmentData fragment : VDJCDataUtils.extractFragments(origin, provider))
+                fragmentsBuilder.addRegion(fragment);
+        }
+
+        VDJCLibraryData data = library.getData();
+        return new VDJCLibraryData(data.getTaxonId(), data.getSpeciesNames(), data.getGenes(),
+                new TreeMap<>(data.getMeta()), fragmentsBuilder.getFragments())
+                .setMetaValue(KnownVDJCLibraryMetaFields.CHECKSUM, Hex.encodeHexString(library.getChecksum()));
+    }
+
+    /**
+     * Restores registry state from snapshot. Libraries already loaded into the registry are skipped.
+     *
+     * @param registry target registry
+     * @param buffer   buffer with snapshot
+     */
+    static void read(VDJCLibraryRegistry registry, ByteBuffer buffer) {
+        buffer = buffer.duplicate();
+        byte[] magic = new byte[SNAPSHOT_MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(SNAPSHOT_MAGIC, magic))
+            throw new IllegalArgumentException("Not a registry snapshot.");
+        int version = buffer.getInt();
+        if (version != SNAPSHOT_FORMAT_VERSION)
+            throw new IllegalArgumentException("Unsupported registry snapshot format version: " + version);
+
+        int numberOfAliases = buffer.getInt();
+        for (int i = 0; i < numberOfAliases; i++) {
+            String alias = readString(buffer);
+            String target = readString(buffer);
+            String existing = registry.aliases.get(alias);
+            if (existing != null && !existing.equals(target))
+                throw new RuntimeException("Conflicting aliases " + alias + " -> " + target + " / " + existing);
+            registry.aliases.put(alias, target);
+        }
+
+        int numberOfLibraries = buffer.getInt();
+        for (int i = 0; i < numberOfLibraries; i++) {
+            String name = readString(buffer);
+            Path context = buffer.get() != 0 ? Paths.get(readString(buffer)) : null;
+            VDJCLibraryData data = readLibrary(buffer);
+            if (registry.libraries.containsKey(new VDJCLibraryId(name, data.getTaxonId())))
+                continue;
+            registry.registerLibrary(context, name, data);
+        }
+    }
+}
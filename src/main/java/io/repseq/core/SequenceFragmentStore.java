@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.VDJCLibraryData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed storage of known sequence fragments. Sequences are keyed by their content (hash code and
+ * equality), so identical fragments from different libraries (e.g. several versions of the built-in library) or
+ * different records are stored once.
+ *
+ * Thread-safe.
+ */
+public final class SequenceFragmentStore {
+    /**
+     * Canonical instances of sequences
+     */
+    private final ConcurrentHashMap<NucleotideSequence, NucleotideSequence> sequences = new ConcurrentHashMap<>();
+    private final AtomicLong fragments = new AtomicLong(),
+            totalBytes = new AtomicLong(),
+            uniqueFragments = new AtomicLong(),
+            storedBytes = new AtomicLong();
+
+    /**
+     * Returns canonical instance of the sequence
+     *
+     * @param sequence sequence
+     * @return canonical instance equal to the sequence
+     */
+    public NucleotideSequence intern(NucleotideSequence sequence) {
+        fragments.incrementAndGet();
+        totalBytes.addAndGet(sequence.size());
+        NucleotideSequence canonical = sequences.get(sequence);
+        if (canonical != null)
+            return canonical;
+        if ((canonical = sequences.putIfAbsent(sequence, sequence)) != null)
+            return canonical;
+        uniqueFragments.incrementAndGet();
+        storedBytes.addAndGet(sequence.size());
+        return sequence;
+    }
+
+    /**
+     * Replaces sequences of all known fragments in library data with canonical instances.
+     *
+     * @param data library data
+     * @return the same object if all fragment sequences were already canonical, or a copy of library data with
+     * canonical fragment sequences
+     */
+    public VDJCLibraryData intern(VDJCLibraryData data) {
+        List<KnownSequenceFragmentData> fragments = data.getSequenceFragments();
+        List<KnownSequenceFragmentData> result = null;
+        for (int i = 0; i < fragments.size(); ++i) {
+            KnownSequenceFragmentData fragment = fragments.get(i);
+            NucleotideSequence canonical = intern(fragment.getSequence());
+            if (canonical == fragment.getSequence() && result == null)
+                continue;
+            if (result == null)
+                result = new ArrayList<>(fragments.subList(0, i));
+            result.add(canonical == fragment.getSequence() ? fragment :
+                    new KnownSequenceFragmentData(fragment.getUri(), fragment.getRange(), canonical));
+        }
+        if (result == null)
+            return data;
+        return new VDJCLibraryData(data.getTaxonId(), new ArrayList<>(data.getSpeciesNames()), data.getGenes(),
+                new TreeMap<>(data.getMeta()), result);
+    }
+
+    /**
+     * Returns memory usage report for this store
+     *
+     * @return memory usage report
+     */
+    public Report getReport() {
+        return new Report(fragments.get(), uniqueFragments.get(), totalBytes.get(), storedBytes.get());
+    }
+
+    /**
+     * Memory usage report. Sequence sizes are measured in bytes of sequence data (one byte per nucleotide), object
+     * headers are not taken into account.
+     */
+    public static final class Report {
+        /**
+         * Total number of fragments passed through the store
+         */
+        public final long fragments;
+        /**
+         * Number of distinct fragments
+         */
+        public final long uniqueFragments;
+        /**
+         * Total size of all fragments passed through the store
+         */
+        public final long totalBytes;
+        /**
+         * Total size of distinct fragments (actually occupied memory)
+         */
+        public final long storedBytes;
+
+        public Report(long fragments, long uniqueFragments, long totalBytes, long storedBytes) {
+            this.fragments = fragments;
+            this.uniqueFragments = uniqueFragments;
+            this.totalBytes = totalBytes;
+            this.storedBytes = storedBytes;
+        }
+
+        /**
+         * Returns number of bytes saved by deduplication
+         *
+         * @return number of bytes saved by deduplication
+         */
+        public long savedBytes() {
+            return totalBytes - storedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Fragments: " + fragments + " (" + uniqueFragments + " unique); " +
+                    "sequence bytes: " + totalBytes + " (" + storedBytes + " stored, " + savedBytes() + " saved)";
+        }
+    }
+}
@@ -17,6 +17,7 @@ package io.repseq.core;
 
 import com.milaboratory.core.Range;
 import com.milaboratory.core.sequence.TranslationParameters;
+import io.repseq.util.BoundedConcurrentCache;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -42,6 +43,32 @@ public abstract class SequencePartitioning {
      */
     public abstract boolean isReversed();
 
+    /**
+     * Returns precomputed positions of standard gene features, or null if this partitioning has no such table (in
+     * this case all positions are calculated on each request)
+     *
+     * @return precomputed positions of standard gene features or null
+     */
+    FeatureRangeTable getFeatureRangeTable() {
+        return null;
+    }
+
+    /**
+     * Returns memo for translation parameters, or null if translation parameters of this partitioning are not
+     * memoized (in this case they are calculated on each request). Keys are gene features (for {@link
+     * #getTranslationParameters(GeneFeature)}) and integer lengths (for {@link #getTranslationParameters(int)}).
+     *
+     * @return memo for translation parameters or null
+     */
+    BoundedConcurrentCache<Object, Object> getTranslationParametersMemo() {
+        return null;
+    }
+
+    /**
+     * Marker for memoized null value
+     */
+    private static final Object NO_TRANSLATION = new Object();
+
     /**
      * Checks if position of anchor point can be obtained using this partitioning
      *
@@ -59,6 +86,10 @@ public abstract class SequencePartitioning {
      * @return true if position of gene feature can be obtained using this partitioning
      */
     public boolean isAvailable(GeneFeature feature) {
+        FeatureRangeTable table = getFeatureRangeTable();
+        int idx;
+        if (table != null && (idx = FeatureRangeTable.index(feature)) >= 0)
+            return table.getLength(idx) >= 0;
         for (GeneFeature.ReferenceRange region : feature)
             if (!isAvailable(region))
                 return false;
@@ -75,10 +106,20 @@ public abstract class SequencePartitioning {
         if (feature.isComposite())
             throw new IllegalArgumentException("Composite feature");
 
+        FeatureRangeTable table = getFeatureRangeTable();
+        int idx;
+        if (table != null && (idx = FeatureRangeTable.index(feature)) >= 0)
+            return table.getStatus(idx) == FeatureRangeTable.UNAVAILABLE ? null : table.getRange(idx, 0);
+
         return getRange(feature.getReferenceRange(0));
     }
 
     public Range[] getRanges(GeneFeature feature) {
+        FeatureRangeTable table = getFeatureRangeTable();
+        int idx;
+        if (table != null && (idx = FeatureRangeTable.index(feature)) >= 0)
+            return table.getRanges(idx);
+
         Range[] result = new Range[feature.size()];
         for (int i = 0; i < feature.size(); ++i) {
             if ((result[i] = getRange(feature.getReferenceRange(i))) == null)
@@ -91,15 +132,44 @@ public abstract class SequencePartitioning {
     }
 
     public int getLength(GeneFeature feature) {
+        FeatureRangeTable table = getFeatureRangeTable();
+        int idx;
+        if (table != null && (idx = FeatureRangeTable.index(feature)) >= 0)
+            return table.getLength(idx);
+
         int length = 0, l;
-        for (GeneFeature.ReferenceRange r : feature) {
-            if ((l = getLength(r)) == -1)
+        // Indexed loop to avoid iterator allocation
+        for (int i = 0; i < feature.size(); ++i) {
+            if ((l = getLength(feature.getReferenceRange(i))) == -1)
                 return -1;
             length += l;
         }
         return length;
     }
 
+    /**
+     * Writes boundaries of non-composite gene feature into {@code bounds} array ({@code bounds[0]} - from,
+     * {@code bounds[1]} - to), without allocation of {@link Range} object.
+     *
+     * @param feature non-composite gene feature
+     * @param bounds  output array of length at least 2
+     * @return length of the feature or -1 if feature is not available (in this case bounds are not modified)
+     */
+    public int getBounds(GeneFeature feature, int[] bounds) {
+        if (feature.isComposite())
+            throw new IllegalArgumentException("Composite feature");
+        GeneFeature.ReferenceRange range = feature.getReferenceRange(0);
+        int begin = getPosition(range.begin);
+        if (begin < 0)
+            return -1;
+        int end = getPosition(range.end);
+        if (end < 0)
+            return -1;
+        bounds[0] = begin;
+        bounds[1] = end;
+        return Math.abs(end - begin);
+    }
+
     protected Range getRange(GeneFeature.ReferenceRange refRange) {
         int begin = getPosition(refRange.begin);
         if (begin < 0)
@@ -249,6 +319,18 @@ public abstract class SequencePartitioning {
      * @return translation parameters
      */
     public TranslationParameters getTranslationParameters(GeneFeature feature) {
+        BoundedConcurrentCache<Object, Object> memo = getTranslationParametersMemo();
+        if (memo == null)
+            return calculateTranslationParameters(feature);
+        Object result = memo.get(feature);
+        if (result == null) {
+            TranslationParameters calculated = calculateTranslationParameters(feature);
+            result = memo.putIfAbsent(feature, calculated == null ? NO_TRANSLATION : calculated);
+        }
+        return result == NO_TRANSLATION ? null : (TranslationParameters) result;
+    }
+
+    private TranslationParameters calculateTranslationParameters(GeneFeature feature) {
         if (!feature.equals(GeneFeature.getCodingGeneFeature(feature)))
             return null;
 
@@ -281,7 +363,18 @@ public abstract class SequencePartitioning {
      * @param length length of original sequence (Integer.MAX_VALUE can be used if value is not known in advance, this
      *               value will be set for final range and must be processed accordingly)
      */
+    @SuppressWarnings("unchecked")
     public List<RangeTranslationParameters> getTranslationParameters(int length) {
+        BoundedConcurrentCache<Object, Object> memo = getTranslationParametersMemo();
+        if (memo == null)
+            return calculateTranslationParameters(length);
+        Object result = memo.get(length);
+        if (result == null)
+            result = memo.putIfAbsent(length, Collections.unmodifiableList(calculateTranslationParameters(length)));
+        return (List<RangeTranslationParameters>) result;
+    }
+
+    private List<RangeTranslationParameters> calculateTranslationParameters(int length) {
         final boolean reversed = isReversed();
 
         // Creating list of points
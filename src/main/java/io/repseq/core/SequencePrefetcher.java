@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.Range;
+import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.VDJCGeneData;
+import io.repseq.dto.VDJCLibraryData;
+import io.repseq.seqbase.SequenceAddress;
+import io.repseq.seqbase.SequenceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves all sequences referenced by library data in parallel, before genes are created. Without prefetching,
+ * sequence sources (remote records, local FASTA files) are downloaded / opened one by one, on first access to each
+ * gene's sequence.
+ */
+public final class SequencePrefetcher {
+    private static final Logger log = LoggerFactory.getLogger(SequencePrefetcher.class);
+
+    private SequencePrefetcher() {
+    }
+
+    /**
+     * Receives prefetch progress. May be invoked concurrently from several threads.
+     */
+    public interface Listener {
+        /**
+         * Invoked after each address is processed
+         *
+         * @param address address
+         * @param error   error or null if address was successfully resolved
+         * @param done    number of processed addresses
+         * @param total   total number of addresses
+         */
+        void prefetched(SequenceAddress address, Throwable error, int done, int total);
+    }
+
+    /**
+     * Collects distinct addresses of base sequences of library genes, which are not fully covered by known sequence
+     * fragments of the same library. Addresses referenced only by fragments and addresses fully covered by fragments
+     * (e.g. all addresses of a compiled library) are not included, as resolving them requires no I/O.
+     *
+     * @param context context to use for resolution of sequences
+     * @param data    library data
+     * @return addresses to prefetch
+     */
+    public static Set<SequenceAddress> collectAddresses(Path context, VDJCLibraryData data) {
+        // Known regions of each record
+        Map<URI, List<Range>> known = new HashMap<>();
+        for (KnownSequenceFragmentData fragment : data.getSequenceFragments()) {
+            List<Range> ranges = known.get(fragment.getUri());
+            if (ranges == null)
+                known.put(fragment.getUri(), ranges = new ArrayList<>());
+            ranges.add(fragment.getRange());
+        }
+        for (List<Range> ranges : known.values())
+            merge(ranges);
+
+        LinkedHashSet<SequenceAddress> result = new LinkedHashSet<>();
+        for (VDJCGeneData gene : data.getGenes()) {
+            URI origin = gene.getBaseSequence().getOrigin();
+            List<Range> ranges = known.get(origin);
+            if (ranges == null || !isCovered(ranges, requiredRanges(gene)))
+                result.add(new SequenceAddress(context, origin));
+        }
+        return result;
+    }
+
+    /**
+     * Returns ranges of the origin record required to build gene sequence, or null if unknown
+     */
+    static List<Range> requiredRanges(VDJCGeneData gene) {
+        BaseSequence baseSequence = gene.getBaseSequence();
+        if (!baseSequence.isPureOriginalSequence())
+            return Arrays.asList(baseSequence.getRegions());
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (Long position : gene.getAnchorPoints().values()) {
+            min = Math.min(min, position.intValue());
+            max = Math.max(max, position.intValue());
+        }
+        return min > max ? null : Collections.singletonList(new Range(min, max));
+    }
+
+    static boolean isCovered(List<Range> known, List<Range> required) {
+        if (required == null)
+            return false;
+        for (Range range : required) {
+            boolean covered = false;
+            for (Range k : known)
+                if (k.getLower() <= range.getLower() && range.getUpper() <= k.getUpper()) {
+                    covered = true;
+                    break;
+                }
+            if (!covered)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sorts ranges and merges overlapping and adjacent ones (in place)
+     */
+    static void merge(List<Range> ranges) {
+        Collections.sort(ranges, new Comparator<Range>() {
+            @Override
+            public int compare(Range o1, Range o2) {
+                return Integer.compare(o1.getLower(), o2.getLower());
+            }
+        });
+        List<Range> merged = new ArrayList<>();
+        for (Range range : ranges) {
+            Range last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range.getLower() <= last.getUpper())
+                merged.set(merged.size() - 1,
+                        new Range(last.getLower(), Math.max(last.getUpper(), range.getUpper())));
+            else
+                merged.add(new Range(range.getLower(), range.getUpper()));
+        }
+        ranges.clear();
+        ranges.addAll(merged);
+    }
+
+    /**
+     * Resolves and initializes (downloads, opens and indexes underlying files) sequence providers for all addresses
+     * in parallel. Errors are not propagated (the same error will be thrown on first access to the sequence), but
+     * are reported to the listener.
+     *
+     * @param resolver  sequence resolver
+     * @param addresses addresses to prefetch
+     * @param threads   number of threads
+     * @param listener  progress listener or null
+     * @return addresses that failed to resolve, with corresponding errors
+     */
+    public static Map<SequenceAddress, Throwable> prefetch(final SequenceResolver resolver,
+                                                           Collection<SequenceAddress> addresses, int threads,
+                                                           final Listener listener) {
+        final ConcurrentHashMap<SequenceAddress, Throwable> errors = new ConcurrentHashMap<>();
+        if (addresses.isEmpty())
+            return errors;
+
+        final int total = addresses.size();
+        final AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, total)));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final SequenceAddress address : addresses)
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        Throwable error = null;
+                        try {
+                            resolver.resolve(address).forceInitialize();
+                        } catch (RuntimeException e) {
+                            log.warn("Can't prefetch {}.", address, e);
+                            errors.put(address, error = e);
+                        }
+                        int d = done.incrementAndGet();
+                        if (listener != null)
+                            listener.prefetched(address, error, d, total);
+                    }
+                }));
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return errors;
+    }
+}
@@ -27,6 +27,10 @@ import com.milaboratory.core.sequence.provider.SequenceProviderUtils;
 public final class SequenceProviderAndReferencePoints extends PartitionedSequenceCached<NucleotideSequence> {
     public final SequenceProvider<NucleotideSequence> sequenceProvider;
     public final ReferencePoints referencePoints;
+    /**
+     * Reversed view of this object (lazily initialized)
+     */
+    private volatile SequenceProviderAndReferencePoints reversed;
 
     public SequenceProviderAndReferencePoints(SequenceProvider<NucleotideSequence> sequenceProvider,
                                               ReferencePoints referencePoints) {
@@ -44,9 +48,22 @@ public final class SequenceProviderAndReferencePoints extends PartitionedSequenc
         return referencePoints;
     }
 
+    /**
+     * Returns reversed view of this object. The view is created once and then returned on each invocation, reverse of
+     * the reversed view is this object.
+     *
+     * @return reversed view
+     */
     public SequenceProviderAndReferencePoints reverse() {
-        return new SequenceProviderAndReferencePoints(SequenceProviderUtils.reversedProvider(sequenceProvider),
-                referencePoints.relative(new Range(sequenceProvider.size(), 0)));
+        SequenceProviderAndReferencePoints result = reversed;
+        if (result == null) {
+            // Benign race: several threads may create equivalent objects
+            result = new SequenceProviderAndReferencePoints(SequenceProviderUtils.reversedProvider(sequenceProvider),
+                    referencePoints.relative(new Range(sequenceProvider.size(), 0)));
+            result.reversed = this;
+            reversed = result;
+        }
+        return result;
     }
 
     public SequenceProviderAndReferencePoints nonReversedView() {
@@ -52,6 +52,24 @@ public final class VDJCGene extends PartitionedSequenceCached<NucleotideSequence
      * Sequence partitioning
      */
     private final ReferencePoints referencePoints;
+    /**
+     * Dense index of this gene inside parent library (-1 if gene was not created by the library)
+     */
+    private final int ordinal;
+    /**
+     * Cached global gene identifier (lazily initialized, as library checksum is only available after all genes are
+     * added to the library)
+     */
+    private volatile VDJCGeneId id;
+    /**
+     * Cached hash code (0 = not yet calculated)
+     */
+    private int hash;
+    /**
+     * Cached tuple of sequence provider and reference points (lazily initialized), shared by all callers so that its
+     * feature cache and its reversed view are computed once per gene
+     */
+    private volatile SequenceProviderAndReferencePoints spAndRPs;
 
     /**
      * Use {@link VDJCLibrary#addGene(VDJCLibrary, VDJCGeneData)} to create instances of this object.
@@ -59,10 +77,19 @@ public final class VDJCGene extends PartitionedSequenceCached<NucleotideSequence
     public VDJCGene(VDJCLibrary parentLibrary, VDJCGeneData data,
                     SequenceProvider<NucleotideSequence> sequenceProvider,
                     ReferencePoints referencePoints) {
+        this(parentLibrary, data, sequenceProvider, referencePoints, -1);
+    }
+
+    VDJCGene(VDJCLibrary parentLibrary, VDJCGeneData data,
+             SequenceProvider<NucleotideSequence> sequenceProvider,
+             ReferencePoints referencePoints, int ordinal) {
         this.parentLibrary = parentLibrary;
         this.data = data;
         this.sequenceProvider = sequenceProvider;
-        this.referencePoints = referencePoints;
+        // Reference points of library genes are long-lived, so positions of standard features are precomputed and
+        // translation parameters are memoized (in a private copy, the caller's object is left unchanged)
+        this.referencePoints = referencePoints.withCaching();
+        this.ordinal = ordinal;
     }
 
     /**
@@ -98,7 +125,22 @@ public final class VDJCGene extends PartitionedSequenceCached<NucleotideSequence
      * @return global gene identifier including library id
      */
     public VDJCGeneId getId() {
-        return new VDJCGeneId(parentLibrary.getLibraryId(), getName());
+        VDJCGeneId id = this.id;
+        if (id == null)
+            this.id = id = new VDJCGeneId(parentLibrary.getLibraryId(), getName());
+        return id;
+    }
+
+    /**
+     * Returns dense index of this gene inside its parent library (from 0 to {@link VDJCLibrary#getGeneCount()} - 1).
+     * Can be used as array index for per-gene data. Genes created with the public constructor outside of the library
+     * have ordinal -1.
+     *
+     * @return index of this gene inside its parent library, or -1
+     * @see VDJCLibrary#getGene(int)
+     */
+    public int getOrdinal() {
+        return ordinal;
     }
 
     /**
@@ -173,7 +215,21 @@ public final class VDJCGene extends PartitionedSequenceCached<NucleotideSequence
      * with useful methods
      */
     public SequenceProviderAndReferencePoints getSPAndRPs() {
-        return new SequenceProviderAndReferencePoints(sequenceProvider, referencePoints);
+        SequenceProviderAndReferencePoints result = spAndRPs;
+        if (result == null)
+            // Benign race: several threads may create equivalent objects
+            spAndRPs = result = new SequenceProviderAndReferencePoints(sequenceProvider, referencePoints);
+        return result;
+    }
+
+    /**
+     * Returns forward strand view of this gene (see {@link SequenceProviderAndReferencePoints#nonReversedView()}).
+     * The view is created once per gene and shared.
+     *
+     * @return forward strand view of this gene
+     */
+    public SequenceProviderAndReferencePoints getNonReversedSPAndRPs() {
+        return getSPAndRPs().nonReversedView();
     }
 
     @Override
@@ -212,11 +268,18 @@ public final class VDJCGene extends PartitionedSequenceCached<NucleotideSequence
 
         VDJCGene vdjcGene = (VDJCGene) o;
 
+        // Fast path for genes from the same library (no id construction / checksum calculation required)
+        if (parentLibrary == vdjcGene.parentLibrary && ordinal >= 0 && vdjcGene.ordinal >= 0)
+            return ordinal == vdjcGene.ordinal;
+
         return vdjcGene.getId().equals(getId());
     }
 
     @Override
     public int hashCode() {
-        return getId().hashCode();
+        int h = hash;
+        if (h == 0)
+            hash = h = getId().hashCode();
+        return h;
     }
 }
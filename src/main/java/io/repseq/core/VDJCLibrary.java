@@ -15,20 +15,36 @@
  */
 package io.repseq.core;
 
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.TranslationParameters;
+import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.KnownVDJCLibraryMetaFields;
 import io.repseq.dto.VDJCGeneData;
 import io.repseq.dto.VDJCLibraryData;
+import io.repseq.seqbase.SequenceAddress;
+import io.repseq.seqbase.SequenceResolver;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 /**
  * Class represent a single library of V, D, J, C genes from a single species. This class may represent a full set of
  * genes in organism e.g. TRA,B,G,D/IGH,L,K or just a set of segments for a single immune receptor chain.
  *
  * VDJCLibrary can be loaded using {@link VDJCLibraryRegistry}.
+ *
+ * Library may be created in lazy mode (see {@link VDJCLibraryRegistry#setLazyLibraries(boolean)}), in this case
+ * VDJCGene objects are created, and their sequence fragments are registered in the sequence resolver, on first
+ * access.
  */
 public class VDJCLibrary implements Comparable<VDJCLibrary> {
     /**
@@ -50,25 +66,182 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
     /**
      * Name -> VDJCGene
      */
-    private final Map<String, VDJCGene> genes = new HashMap<>();
+    private final Map<String, VDJCGene> genes = new ConcurrentHashMap<>();
+    /**
+     * Ordinal -> VDJCGene (may contain nulls for not yet materialized genes in lazy mode)
+     */
+    private final List<VDJCGene> genesByOrdinal = new ArrayList<>();
+    /**
+     * Unmodifiable view of genesByOrdinal
+     */
+    private final List<VDJCGene> genesByOrdinalView = Collections.unmodifiableList(genesByOrdinal);
+    /**
+     * Lazy mode only: gene name -> gene data, for genes that are not materialized yet (guarded by this)
+     */
+    private Map<String, VDJCGeneData> pendingGenes;
+    /**
+     * Lazy mode only: gene name -> ordinal (guarded by this)
+     */
+    private Map<String, Integer> lazyOrdinals;
+    /**
+     * Lazy mode only: ordinal -> gene name (guarded by this)
+     */
+    private List<String> lazyNames;
+    /**
+     * Lazy mode only: sequence fragments not yet registered in sequence resolver grouped by uri (guarded by this)
+     */
+    private Map<URI, List<KnownSequenceFragmentData>> pendingFragments;
+    /**
+     * False if there are genes that are not yet materialized
+     */
+    private volatile boolean materialized = true;
+    /**
+     * Secondary indexes for gene queries by chains and gene type (created on first query, reset on gene addition)
+     */
+    private volatile GeneIndex index;
+    /**
+     * Library id with null checksum
+     */
+    private final VDJCLibraryId libraryIdWithoutChecksum;
     /**
      * Cached checksum value
      */
     private volatile byte[] checksum;
+    /**
+     * Cached library id (with checksum)
+     */
+    private volatile VDJCLibraryId libraryId;
 
     public VDJCLibrary(VDJCLibraryData libraryData, String name, VDJCLibraryRegistry registry, Path context) {
         this.libraryData = libraryData;
         this.name = name;
         this.registry = registry;
         this.context = context;
+        this.libraryIdWithoutChecksum = new VDJCLibraryId(name, libraryData.getTaxonId());
     }
 
     private void put(VDJCGene gene) {
+        if (pendingGenes != null)
+            pendingGenes.remove(gene.getName());
+        index = null;
         genes.put(gene.getName(), gene);
+        if (gene.getOrdinal() == genesByOrdinal.size())
+            genesByOrdinal.add(gene);
+        else
+            genesByOrdinal.set(gene.getOrdinal(), gene);
+    }
+
+    private int nextOrdinal(String geneName) {
+        if (lazyOrdinals != null) {
+            Integer ordinal = lazyOrdinals.get(geneName);
+            if (ordinal != null)
+                return ordinal;
+        }
+        VDJCGene existing = genes.get(geneName);
+        return existing == null ? genesByOrdinal.size() : existing.getOrdinal();
+    }
+
+    /**
+     * Registers sequence fragments in parent registry's sequence resolver
+     *
+     * @param fragments fragments
+     */
+    void registerFragments(Collection<KnownSequenceFragmentData> fragments) {
+        SequenceResolver resolver = registry.getSequenceResolver();
+        for (KnownSequenceFragmentData fragment : fragments)
+            resolver.resolve(new SequenceAddress(context, fragment.getUri())).setRegion(fragment.getRange(),
+                    fragment.getSequence());
+    }
+
+    /**
+     * Eagerly registers all sequence fragments and creates all genes from library data
+     */
+    void initEager() {
+        registerFragments(libraryData.getSequenceFragments());
+        for (VDJCGeneData gene : libraryData.getGenes())
+            addGene(this, gene);
     }
 
     /**
-     * Return checksum for this library.
+     * Prepares library for lazy gene materialization (nothing is resolved at this point)
+     */
+    synchronized void initLazy() {
+        pendingGenes = new HashMap<>();
+        lazyOrdinals = new HashMap<>();
+        lazyNames = new ArrayList<>();
+        for (VDJCGeneData gene : libraryData.getGenes()) {
+            if (!lazyOrdinals.containsKey(gene.getName())) {
+                lazyOrdinals.put(gene.getName(), lazyNames.size());
+                lazyNames.add(gene.getName());
+                genesByOrdinal.add(null);
+            }
+            pendingGenes.put(gene.getName(), gene);
+        }
+
+        pendingFragments = new HashMap<>();
+        for (KnownSequenceFragmentData fragment : libraryData.getSequenceFragments()) {
+            List<KnownSequenceFragmentData> list = pendingFragments.get(fragment.getUri());
+            if (list == null)
+                pendingFragments.put(fragment.getUri(), list = new ArrayList<>());
+            list.add(fragment);
+        }
+
+        materialized = pendingGenes.isEmpty() && pendingFragments.isEmpty();
+    }
+
+    /**
+     * Returns whether all genes of this library are already created
+     *
+     * @return whether all genes of this library are already created
+     */
+    public boolean isMaterialized() {
+        return materialized;
+    }
+
+    /**
+     * Creates gene (lazy mode)
+     */
+    private synchronized VDJCGene materialize(String geneName) {
+        VDJCGene gene = genes.get(geneName);
+        if (gene != null || pendingGenes == null)
+            return gene;
+
+        VDJCGeneData data = pendingGenes.get(geneName);
+        if (data == null)
+            return null;
+
+        // Fragments must be registered before sequence resolution
+        List<KnownSequenceFragmentData> fragments = pendingFragments.remove(data.getBaseSequence().getOrigin());
+        if (fragments != null)
+            registerFragments(fragments);
+
+        gene = addGene(this, data);
+        if (pendingGenes.isEmpty() && pendingFragments.isEmpty())
+            materialized = true;
+        return gene;
+    }
+
+    /**
+     * Creates all remaining genes (lazy mode)
+     */
+    private synchronized void materializeAll() {
+        if (materialized)
+            return;
+
+        for (List<KnownSequenceFragmentData> fragments : pendingFragments.values())
+            registerFragments(fragments);
+        pendingFragments.clear();
+
+        for (VDJCGeneData data : new ArrayList<>(pendingGenes.values()))
+            addGene(this, data);
+
+        materialized = true;
+    }
+
+    /**
+     * Return checksum for this library. If library contains precomputed checksum in meta section (compiled
+     * libraries), it is used without recalculation, unless {@link VDJCLibraryRegistry#setVerifyChecksums(boolean)}
+     * is enabled.
      *
      * @return checksum for this library
      */
@@ -76,30 +249,83 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
         if (checksum == null)
             synchronized (this) {
                 if (checksum == null) {
-                    List<VDJCGene> genes = new ArrayList<>(getGenes());
-                    Collections.sort(genes, new Comparator<VDJCGene>() {
-                        @Override
-                        public int compare(VDJCGene o1, VDJCGene o2) {
-                            return o1.getData().compareTo(o2.getData());
-                        }
-                    });
-
-                    StringBuilder bigSeqBuilder = new StringBuilder();
-                    for (VDJCGene gene : genes)
-                        bigSeqBuilder.append(gene.getFeature(gene.getPartitioning().getWrappingGeneFeature()).toString());
-
-                    try {
-                        byte[] bytes = bigSeqBuilder.toString().getBytes(StandardCharsets.UTF_8);
-                        MessageDigest md = MessageDigest.getInstance("MD5");
-                        checksum = md.digest(bytes);
-                    } catch (NoSuchAlgorithmException e) {
-                        throw new RuntimeException(e);
+                    byte[] stored = getStoredChecksum();
+                    if (stored != null && !registry.isVerifyChecksums())
+                        checksum = stored;
+                    else {
+                        byte[] calculated = calculateChecksum(getGenes());
+                        if (stored != null && !Arrays.equals(stored, calculated))
+                            throw new RuntimeException("Checksum stored in library " + getLibraryIdWithoutChecksum() +
+                                    " (" + Hex.encodeHexString(stored) + ") differs from the actual one (" +
+                                    Hex.encodeHexString(calculated) + ").");
+                        checksum = calculated;
                     }
                 }
             }
         return checksum;
     }
 
+    /**
+     * Returns checksum stored in library meta section (see {@link KnownVDJCLibraryMetaFields#CHECKSUM}) or null
+     */
+    private byte[] getStoredChecksum() {
+        String stored = libraryData.getMetaValue(KnownVDJCLibraryMetaFields.CHECKSUM);
+        if (stored == null)
+            return null;
+        try {
+            return Hex.decodeHex(stored.toCharArray());
+        } catch (DecoderException e) {
+            throw new IllegalArgumentException("Malformed checksum in library " + getLibraryIdWithoutChecksum() +
+                    ": " + stored, e);
+        }
+    }
+
+    /**
+     * Size of the buffer used to feed sequence data to message digest
+     */
+    private static final int CHECKSUM_BUFFER_SIZE = 8192;
+
+    /**
+     * Calculates checksum for the set of genes (MD5 digest of concatenated wrapping gene feature sequences of all
+     * genes, sorted by gene data). Sequences are fed to the digest in a streaming fashion, without materialization of
+     * concatenated sequence.
+     *
+     * @param genes genes
+     * @return checksum
+     */
+    public static byte[] calculateChecksum(Collection<VDJCGene> genes) {
+        List<VDJCGene> sorted = new ArrayList<>(genes);
+        Collections.sort(sorted, new Comparator<VDJCGene>() {
+            @Override
+            public int compare(VDJCGene o1, VDJCGene o2) {
+                return o1.getData().compareTo(o2.getData());
+            }
+        });
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        // Nucleotide letters are ASCII, so one char = one UTF-8 byte
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        int position = 0;
+        for (VDJCGene gene : sorted) {
+            NucleotideSequence seq = gene.getFeature(gene.getPartitioning().getWrappingGeneFeature());
+            for (int i = 0; i < seq.size(); ++i) {
+                if (position == buffer.length) {
+                    md.update(buffer, 0, position);
+                    position = 0;
+                }
+                buffer[position++] = (byte) seq.symbolAt(i);
+            }
+        }
+        md.update(buffer, 0, position);
+        return md.digest();
+    }
+
     /**
      * Returns serializable library data
      *
@@ -133,46 +359,171 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
      * @return collection of all genes in this library
      */
     public Collection<VDJCGene> getGenes() {
-        return genes.values();
+        if (!materialized)
+            materializeAll();
+        return genesByOrdinalView;
     }
 
     /**
      * Returns collection of all genes in this library with specific chains
      *
-     * @return collection of all genes in this library with specific chains
+     * @return unmodifiable collection of all genes in this library with specific chains (in ordinal order)
      */
     public Collection<VDJCGene> getGenes(Chains chains) {
-        List<VDJCGene> result = new ArrayList<>();
-        for (VDJCGene gene : genes.values())
-            if (gene.getChains().intersects(chains))
-                result.add(gene);
-        return result;
+        return getIndex().get(chains, null);
     }
 
     /**
      * Returns collection of all genes in this library with specific geneType
      *
-     * @return collection of all genes in this library with specific geneType
+     * @return unmodifiable collection of all genes in this library with specific geneType (in ordinal order)
      */
     public Collection<VDJCGene> getGenes(GeneType geneType) {
-        List<VDJCGene> result = new ArrayList<>();
-        for (VDJCGene gene : genes.values())
-            if (gene.getGeneType() == geneType)
-                result.add(gene);
-        return result;
+        return getIndex().byGeneType.get(geneType);
     }
 
     /**
      * Returns collection of all genes in this library with specific geneType and chains
      *
-     * @return collection of all genes in this library with specific geneType and chains
+     * @return unmodifiable collection of all genes in this library with specific geneType and chains (in ordinal
+     * order)
      */
     public Collection<VDJCGene> getGenes(Chains chains, GeneType geneType) {
-        List<VDJCGene> result = new ArrayList<>();
-        for (VDJCGene gene : genes.values())
-            if (gene.getChains().intersects(chains) && gene.getGeneType() == geneType)
-                result.add(gene);
-        return result;
+        return getIndex().get(chains, geneType);
+    }
+
+    private GeneIndex getIndex() {
+        GeneIndex index = this.index;
+        if (index == null)
+            synchronized (this) {
+                index = this.index;
+                if (index == null)
+                    this.index = index = new GeneIndex(new ArrayList<>(getGenes()));
+            }
+        return index;
+    }
+
+    /**
+     * Immutable secondary indexes of library genes. Gene lists are unmodifiable and preserve ordinal order. Lists
+     * for single chains and gene types are built eagerly, lists for other chain combinations are built on first
+     * query and cached.
+     */
+    private static final class GeneIndex {
+        final List<VDJCGene> allGenes;
+        final EnumMap<GeneType, List<VDJCGene>> byGeneType = new EnumMap<>(GeneType.class);
+        /**
+         * Chains -> lists of genes, indexed by GeneType.ordinal(), last element contains genes of all types
+         */
+        final ConcurrentHashMap<Chains, List<VDJCGene>[]> byChains = new ConcurrentHashMap<>();
+
+        GeneIndex(List<VDJCGene> allGenes) {
+            this.allGenes = allGenes;
+            for (GeneType geneType : GeneType.values())
+                byGeneType.put(geneType, filter(null, geneType));
+            Set<String> chainNames = new HashSet<>();
+            for (VDJCGene gene : allGenes)
+                for (String chain : gene.getChains())
+                    chainNames.add(chain);
+            for (String chain : chainNames)
+                build(Chains.of(chain));
+        }
+
+        List<VDJCGene> get(Chains chains, GeneType geneType) {
+            List<VDJCGene>[] lists = byChains.get(chains);
+            if (lists == null)
+                lists = build(chains);
+            return lists[geneType == null ? lists.length - 1 : geneType.ordinal()];
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<VDJCGene>[] build(Chains chains) {
+            GeneType[] geneTypes = GeneType.values();
+            List<VDJCGene>[] lists = new List[geneTypes.length + 1];
+            for (GeneType geneType : geneTypes)
+                lists[geneType.ordinal()] = filter(chains, geneType);
+            lists[geneTypes.length] = filter(chains, null);
+            List<VDJCGene>[] existing = byChains.putIfAbsent(chains, lists);
+            return existing == null ? lists : existing;
+        }
+
+        private List<VDJCGene> filter(Chains chains, GeneType geneType) {
+            List<VDJCGene> result = new ArrayList<>();
+            for (VDJCGene gene : allGenes)
+                if ((chains == null || gene.getChains().intersects(chains))
+                        && (geneType == null || gene.getGeneType() == geneType))
+                    result.add(gene);
+            return Collections.unmodifiableList(result);
+        }
+    }
+
+    /**
+     * Extracts gene feature from all genes of this library (optionally filtered) in parallel, and returns result in
+     * columnar form. Genes where the feature is not available are skipped.
+     *
+     * @param feature   gene feature to extract
+     * @param filter    gene filter or null to extract from all genes
+     * @param translate if true, amino acid sequences of extracted features will be calculated too
+     * @return columnar batch of extracted sequences
+     */
+    public FeatureBatch extract(final GeneFeature feature, Predicate<VDJCGene> filter, boolean translate) {
+        List<VDJCGene> selected = new ArrayList<>();
+        for (VDJCGene gene : getGenes())
+            if (filter == null || filter.test(gene))
+                selected.add(gene);
+
+        final VDJCGene[] genes = selected.toArray(new VDJCGene[selected.size()]);
+        final NucleotideSequence[] seqs = new NucleotideSequence[genes.length];
+        Arrays.parallelSetAll(seqs, new IntFunction<NucleotideSequence>() {
+            @Override
+            public NucleotideSequence apply(int i) {
+                return genes[i].getFeature(feature);
+            }
+        });
+
+        AminoAcidSequence[] aaSeqs = null;
+        if (translate) {
+            aaSeqs = new AminoAcidSequence[genes.length];
+            Arrays.parallelSetAll(aaSeqs, new IntFunction<AminoAcidSequence>() {
+                @Override
+                public AminoAcidSequence apply(int i) {
+                    if (seqs[i] == null)
+                        return null;
+                    TranslationParameters tp = genes[i].getPartitioning().getTranslationParameters(feature);
+                    return tp == null ? null : AminoAcidSequence.translate(seqs[i], tp);
+                }
+            });
+        }
+
+        return FeatureBatch.pack(this, feature, genes, seqs, aaSeqs);
+    }
+
+    /**
+     * Returns number of genes in this library. All gene ordinals are in range [0, getGeneCount()).
+     *
+     * @return number of genes in this library
+     */
+    public int getGeneCount() {
+        return genesByOrdinal.size();
+    }
+
+    /**
+     * Returns gene by its ordinal (see {@link VDJCGene#getOrdinal()})
+     *
+     * @param ordinal gene ordinal
+     * @return gene
+     * @throws IndexOutOfBoundsException if ordinal is out of range
+     */
+    public VDJCGene getGene(int ordinal) {
+        if (!materialized)
+            return getGeneLazy(ordinal);
+        return genesByOrdinal.get(ordinal);
+    }
+
+    private synchronized VDJCGene getGeneLazy(int ordinal) {
+        VDJCGene gene = genesByOrdinal.get(ordinal);
+        if (gene != null)
+            return gene;
+        return materialize(lazyNames.get(ordinal));
     }
 
     /**
@@ -181,7 +532,10 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
      * @return VDJCGene or null if gene with provided name is not found
      */
     public VDJCGene get(String geneName) {
-        return genes.get(geneName);
+        VDJCGene gene = genes.get(geneName);
+        if (gene == null && !materialized)
+            gene = materialize(geneName);
+        return gene;
     }
 
     /**
@@ -191,7 +545,7 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
      * @throws GeneNotFoundException
      */
     public VDJCGene getSafe(String geneName) {
-        VDJCGene gene = genes.get(geneName);
+        VDJCGene gene = get(geneName);
         if (gene == null)
             throw new GeneNotFoundException(geneName, this);
         return gene;
@@ -203,7 +557,10 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
      * @return identifier of this library
      */
     public VDJCLibraryId getLibraryId() {
-        return new VDJCLibraryId(name, libraryData.getTaxonId(), getChecksum());
+        VDJCLibraryId libraryId = this.libraryId;
+        if (libraryId == null)
+            this.libraryId = libraryId = new VDJCLibraryId(name, libraryData.getTaxonId(), getChecksum());
+        return libraryId;
     }
 
     /**
@@ -212,7 +569,7 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
      * @return library id with null checksum. For usage as map key.
      */
     VDJCLibraryId getLibraryIdWithoutChecksum() {
-        return new VDJCLibraryId(name, libraryData.getTaxonId());
+        return libraryIdWithoutChecksum;
     }
 
     /**
@@ -273,7 +630,7 @@ public class VDJCLibrary implements Comparable<VDJCLibrary> {
             }
 
         VDJCGene gene = new VDJCGene(library, geneData, geneData.getBaseSequence().resolve(library.getContext(),
-                library.registry.getSequenceResolver()), rpBuilder.build());
+                library.registry.getSequenceResolver()), rpBuilder.build(), library.nextOrdinal(geneData.getName()));
         library.put(gene);
         return gene;
     }
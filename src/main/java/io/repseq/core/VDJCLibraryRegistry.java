@@ -16,11 +16,8 @@
 package io.repseq.core;
 
 import com.milaboratory.util.GlobalObjectMappers;
-import io.repseq.dto.KnownSequenceFragmentData;
 import io.repseq.dto.VDJCDataUtils;
-import io.repseq.dto.VDJCGeneData;
 import io.repseq.dto.VDJCLibraryData;
-import io.repseq.seqbase.SequenceAddress;
 import io.repseq.seqbase.SequenceResolver;
 import io.repseq.seqbase.SequenceResolvers;
 import org.apache.commons.io.IOUtils;
@@ -28,21 +25,31 @@ import org.reflections.Reflections;
 import org.reflections.scanners.ResourcesScanner;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Registry of VDJCLibraries. Central storage for VDJCLibraries objects. VDJCLibraries can be created only using
  * VDJCLibraryRegistry.
+ *
+ * Thread-safe. Lookup of already loaded libraries (and genes) is lock-free, while loading and registration of new
+ * libraries is serialized.
  */
 public final class VDJCLibraryRegistry {
     /**
@@ -57,27 +64,47 @@ public final class VDJCLibraryRegistry {
     /**
      * Resolvers to search for VDJCLibrary with particular name
      */
-    final List<LibraryResolver> libraryResolvers = new ArrayList<>();
+    final List<LibraryResolver> libraryResolvers = new CopyOnWriteArrayList<>();
     /**
      * Collected from all loaded VDJCLibrary
      */
-    final Map<String, Long> speciesNames = new HashMap<>();
+    final Map<String, Long> speciesNames = new ConcurrentHashMap<>();
     /**
-     * Collected from all loaded VDJCLibrary
+     * Collected from all loaded VDJCLibrary (values are immutable lists, replaced on each update)
      */
-    final Map<Long, List<String>> speciesNamesReverse = new HashMap<>();
+    final Map<Long, List<String>> speciesNamesReverse = new ConcurrentHashMap<>();
     /**
      * Loaded libraries
      */
-    final Map<VDJCLibraryId, VDJCLibrary> libraries = new HashMap<>();
+    final Map<VDJCLibraryId, VDJCLibrary> libraries = new ConcurrentHashMap<>();
     /**
-     * Store successfully loaded libraries
+     * Store successfully loaded libraries (guarded by this)
      */
     final HashSet<LibraryLoadRequest> loadedLibraries = new HashSet<>();
     /**
      * Library name aliases
      */
-    final HashMap<String, String> aliases = new HashMap<>();
+    final Map<String, String> aliases = new ConcurrentHashMap<>();
+    /**
+     * Deduplicated storage of known sequence fragments of all registered libraries
+     */
+    final SequenceFragmentStore fragmentStore = new SequenceFragmentStore();
+    /**
+     * If true, genes of newly registered libraries are created on first access
+     */
+    volatile boolean lazyLibraries = false;
+    /**
+     * If true, checksums stored in library meta are verified on first request
+     */
+    volatile boolean verifyChecksums = false;
+    /**
+     * Number of threads used to prefetch sequences of newly registered libraries (0 - prefetch is disabled)
+     */
+    volatile int prefetchThreads = 0;
+    /**
+     * Receives progress of sequence prefetch (may be null)
+     */
+    volatile SequencePrefetcher.Listener prefetchListener = null;
 
     /**
      * Creates new VDJCLibraryRegistry with default sequence resolver
@@ -104,6 +131,83 @@ public final class VDJCLibraryRegistry {
         return sequenceResolver == null ? SequenceResolvers.getDefault() : sequenceResolver;
     }
 
+    /**
+     * Returns storage of known sequence fragments, shared by all libraries of this registry. Identical fragments of
+     * different libraries are stored once; see {@link SequenceFragmentStore#getReport()} for memory usage.
+     *
+     * @return storage of known sequence fragments
+     */
+    public SequenceFragmentStore getFragmentStore() {
+        return fragmentStore;
+    }
+
+    /**
+     * Returns whether genes of newly registered libraries are created on first access.
+     *
+     * @return whether genes of newly registered libraries are created on first access
+     */
+    public boolean isLazyLibraries() {
+        return lazyLibraries;
+    }
+
+    /**
+     * Sets whether genes of libraries registered after this call are created (and their sequence fragments are
+     * registered in sequence resolver) on first access, instead of at registration time. Useful for applications
+     * that use only a small subset of genes from large libraries.
+     *
+     * @param lazyLibraries true to enable lazy gene creation
+     */
+    public void setLazyLibraries(boolean lazyLibraries) {
+        this.lazyLibraries = lazyLibraries;
+    }
+
+    /**
+     * Returns whether checksums stored in compiled libraries are verified (see {@link VDJCLibrary#getChecksum()}).
+     *
+     * @return whether checksums stored in compiled libraries are verified
+     */
+    public boolean isVerifyChecksums() {
+        return verifyChecksums;
+    }
+
+    /**
+     * Sets whether checksums stored in compiled libraries should be verified. By default stored checksum is trusted,
+     * and is used without recalculation. If verification is enabled, checksum is recalculated from gene sequences
+     * and an exception is thrown on first {@link VDJCLibrary#getChecksum()} invocation if it differs from the stored
+     * one.
+     *
+     * @param verifyChecksums true to enable verification
+     */
+    public void setVerifyChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+    }
+
+    /**
+     * Returns number of threads used to prefetch sequences of newly registered libraries, 0 if prefetch is disabled
+     *
+     * @return number of prefetch threads
+     */
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    /**
+     * Enables parallel prefetch of sequences on library registration. If enabled, all sequences referenced by the
+     * library and not covered by its known sequence fragments (see {@link SequencePrefetcher#collectAddresses(Path,
+     * VDJCLibraryData)}) are resolved in parallel before genes are created, instead of being downloaded / opened one
+     * by one on first access to each gene. Prefetch of explicitly registered libraries (see {@link
+     * #registerLibrary(Path, String, VDJCLibraryData)}) doesn't hold the registry lock.
+     *
+     * @param prefetchThreads number of threads, 0 to disable prefetch
+     * @param listener        progress listener (may be null)
+     */
+    public void setPrefetch(int prefetchThreads, SequencePrefetcher.Listener listener) {
+        if (prefetchThreads < 0)
+            throw new IllegalArgumentException();
+        this.prefetchListener = listener;
+        this.prefetchThreads = prefetchThreads;
+    }
+
     /**
      * Returns collection of libraries that are currently loaded by this registry.
      *
@@ -184,7 +288,8 @@ public final class VDJCLibraryRegistry {
      * @return list of known species names for a given taxon id
      */
     public List<String> getSpeciesNames(long taxonId) {
-        return speciesNamesReverse.containsKey(taxonId) ? speciesNamesReverse.get(taxonId) : Collections.<String>emptyList();
+        List<String> names = speciesNamesReverse.get(taxonId);
+        return names != null ? names : Collections.<String>emptyList();
     }
 
     /**
@@ -208,7 +313,8 @@ public final class VDJCLibraryRegistry {
 
 
     /**
-     * Adds path resolver to search for libraries with {libraryName}.json[.gz] file names in specified folder.
+     * Adds path resolver to search for libraries with {libraryName}.json[.gz] (or binary {libraryName}.bin) file names
+     * in specified folder.
      *
      * @param searchPath path to search for {libraryName}.json[.gz] files
      */
@@ -344,8 +450,9 @@ public final class VDJCLibraryRegistry {
 
         // If not found try aliases
         if (vdjcLibrary == null) {
-            if (aliases.containsKey(libraryName) && !aliasSearch)
-                return tryGetLibrary(aliases.get(libraryName), null, taxonId, checksum, true);
+            String alias;
+            if (!aliasSearch && (alias = aliases.get(libraryName)) != null)
+                return tryGetLibrary(alias, null, taxonId, checksum, true);
             else
                 return null;
         }
@@ -368,10 +475,23 @@ public final class VDJCLibraryRegistry {
      * @return library
      * @throws RuntimeException if failed to resolve library
      */
-    private synchronized VDJCLibrary getLibrary(String libraryName, String species, long taxonId, byte[] checksum) {
+    private VDJCLibrary getLibrary(String libraryName, String species, long taxonId, byte[] checksum) {
+        VDJCLibrary vdjcLibrary;
+
+        // Lock-free search for already loaded libraries and if found return it
+        if ((vdjcLibrary = tryGetLibrary(libraryName, species, taxonId, checksum)) != null)
+            return vdjcLibrary;
+
+        return loadLibrary(libraryName, species, taxonId, checksum);
+    }
+
+    /**
+     * Slow path of {@link #getLibrary(String, String, long, byte[])}, tries to load library using provided resolvers
+     */
+    private synchronized VDJCLibrary loadLibrary(String libraryName, String species, long taxonId, byte[] checksum) {
         VDJCLibrary vdjcLibrary;
 
-        // Search for already loaded libraries and if found return it
+        // Library may have been loaded by another thread while we were waiting for the lock
         if ((vdjcLibrary = tryGetLibrary(libraryName, species, taxonId, checksum)) != null)
             return vdjcLibrary;
 
@@ -400,7 +520,7 @@ public final class VDJCLibraryRegistry {
      *
      * @param name library name
      */
-    public void loadAllLibraries(String name) {
+    public synchronized void loadAllLibraries(String name) {
         for (LibraryResolver resolver : libraryResolvers)
             tryResolve(resolver, name);
     }
@@ -408,7 +528,7 @@ public final class VDJCLibraryRegistry {
     /**
      * Load all possible libraries using all available resolvers (resolvers having such feature)
      */
-    public void loadAllLibraries() {
+    public synchronized void loadAllLibraries() {
         List<String> allNames = new ArrayList<>();
 
         for (LibraryResolver resolver : libraryResolvers)
@@ -419,7 +539,7 @@ public final class VDJCLibraryRegistry {
             loadAllLibraries(name);
     }
 
-    private void tryResolve(LibraryResolver resolver, String libraryName) {
+    private synchronized void tryResolve(LibraryResolver resolver, String libraryName) {
         // Check if this combination of resolver and libraryName was already being processed
         LibraryLoadRequest request = new LibraryLoadRequest(resolver, libraryName);
         if (loadedLibraries.contains(request))
@@ -468,7 +588,21 @@ public final class VDJCLibraryRegistry {
      * @param data    library data
      * @return created library
      */
-    public synchronized VDJCLibrary registerLibrary(Path context, String name, VDJCLibraryData data) {
+    public VDJCLibrary registerLibrary(Path context, String name, VDJCLibraryData data) {
+        // Resolving all required sequences in parallel, without holding the registry lock
+        // (if prefetch is enabled)
+        int prefetchThreads = this.prefetchThreads;
+        if (prefetchThreads > 0)
+            SequencePrefetcher.prefetch(getSequenceResolver(), SequencePrefetcher.collectAddresses(context, data),
+                    prefetchThreads, prefetchListener);
+
+        return doRegisterLibrary(context, name, data);
+    }
+
+    private synchronized VDJCLibrary doRegisterLibrary(Path context, String name, VDJCLibraryData data) {
+        // Sharing known sequence fragments with already registered libraries
+        data = fragmentStore.intern(data);
+
         // Creating library object
         VDJCLibrary library = new VDJCLibrary(data, name, this, context);
 
@@ -479,15 +613,12 @@ public final class VDJCLibraryRegistry {
         if (libraries.containsKey(rootId))
             throw new RuntimeException("Duplicate library: " + rootId);
 
-        // Loading known sequence fragments from VDJCLibraryData to current SequenceResolver
-        SequenceResolver resolver = getSequenceResolver();
-        for (KnownSequenceFragmentData fragment : data.getSequenceFragments())
-            resolver.resolve(new SequenceAddress(context, fragment.getUri())).setRegion(fragment.getRange(),
-                    fragment.getSequence());
-
-        // Adding genes
-        for (VDJCGeneData gene : data.getGenes())
-            VDJCLibrary.addGene(library, gene);
+        // Loading known sequence fragments from VDJCLibraryData to current SequenceResolver and adding genes
+        // (in lazy mode both are deferred until first access to the gene)
+        if (lazyLibraries)
+            library.initLazy();
+        else
+            library.initEager();
 
         // Adding common species names
         Long taxonId = data.getTaxonId();
@@ -497,10 +628,11 @@ public final class VDJCLibraryRegistry {
                 throw new IllegalArgumentException("Mismatch in common species name between several libraries. " +
                         "(Library name = " + name + "; name = " + speciesName + ").");
             speciesNames.put(cSpeciesName, taxonId);
+            // Copy-on-write to allow lock-free reads
             List<String> names = speciesNamesReverse.get(taxonId);
-            if (names == null)
-                speciesNamesReverse.put(taxonId, names = new ArrayList<>());
+            names = names == null ? new ArrayList<String>() : new ArrayList<>(names);
             names.add(speciesName);
+            speciesNamesReverse.put(taxonId, Collections.unmodifiableList(names));
         }
 
         // Adding this library to collection
@@ -554,6 +686,36 @@ public final class VDJCLibraryRegistry {
         }
     }
 
+    /**
+     * Writes fully built state of this registry (all loaded libraries, aliases, precomputed checksums and all resolved
+     * gene sequences) to a single snapshot file, which can be later restored using {@link #loadSnapshot(Path)}
+     * without library resolution and without access to external sequence sources.
+     *
+     * @param file snapshot file
+     */
+    public synchronized void writeSnapshot(Path file) {
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file.toFile()), 1 << 16))) {
+            RegistrySnapshot.write(this, output);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Restores libraries and aliases from snapshot file created by {@link #writeSnapshot(Path)}. File is memory-mapped
+     * and read sequentially. Libraries that are already loaded into this registry are skipped.
+     *
+     * @param file snapshot file
+     */
+    public synchronized void loadSnapshot(Path file) {
+        try {
+            RegistrySnapshot.read(this, BinaryLibraryFormat.map(file));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Default registry
      */
@@ -661,14 +823,21 @@ public final class VDJCLibraryRegistry {
         List<String> getLibraryNameList();
     }
 
-    static final Pattern FILE_EXTENSION_PATTERN = Pattern.compile("(?i).json(?:\\.gz)?$");
+    static final Pattern FILE_EXTENSION_PATTERN = Pattern.compile("(?i)(?:.json(?:\\.gz)?|\\.bin)$");
+
+    static boolean isLibraryFileName(String fileName) {
+        String lcName = fileName.toLowerCase();
+        return lcName.endsWith(".json") || lcName.endsWith(".json.gz") ||
+                BinaryLibraryFormat.isBinaryLibraryFile(fileName);
+    }
 
     static String libraryNameFromFileName(String fileName) {
         return FILE_EXTENSION_PATTERN.matcher(fileName).replaceAll("");
     }
 
     /**
-     * Load library data from {libraryName}.json files in specified folder.
+     * Load library data from {libraryName}.json files in specified folder. Binary libraries ({libraryName}.bin), if
+     * present, take precedence over json files and are memory-mapped instead of being parsed.
      */
     public static final class FolderLibraryResolver implements LibraryResolver, AliasResolver, LibraryNameListProvider {
         private final Path path;
@@ -699,10 +868,12 @@ public final class VDJCLibraryRegistry {
                 for (Path subPath : paths) {
                     String name = subPath.getFileName().toString();
 
-                    if (!name.toLowerCase().endsWith(".json") && !name.toLowerCase().endsWith(".json.gz"))
+                    if (!isLibraryFileName(name))
                         continue;
 
-                    result.add(libraryNameFromFileName(name));
+                    String libraryName = libraryNameFromFileName(name);
+                    if (!result.contains(libraryName))
+                        result.add(libraryName);
                 }
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -722,12 +893,12 @@ public final class VDJCLibraryRegistry {
                     for (Path subPath : paths) {
                         String name = subPath.getFileName().toString();
 
-                        if (!name.toLowerCase().endsWith(".json") && !name.toLowerCase().endsWith(".json.gz"))
+                        if (!isLibraryFileName(name))
                             continue;
 
                         name = libraryNameFromFileName(name);
 
-                        if (name.startsWith(libraryName + "."))
+                        if (name.startsWith(libraryName + ".") && !candidates.contains(name))
                             candidates.add(name);
                     }
                 } catch (IOException e) {
@@ -747,7 +918,13 @@ public final class VDJCLibraryRegistry {
         @Override
         public VDJCLibraryData[] resolve(String libraryName) {
             try {
-                Path filePath = path.resolve(libraryName + ".json");
+                Path filePath = path.resolve(libraryName + BinaryLibraryFormat.EXTENSION);
+
+                if (Files.exists(filePath))
+                    // Memory-mapping binary library
+                    return BinaryLibraryFormat.readFromFile(filePath);
+
+                filePath = path.resolve(libraryName + ".json");
 
                 if (Files.exists(filePath))
                     // Getting libraries from file
@@ -768,7 +945,8 @@ public final class VDJCLibraryRegistry {
     }
 
     /**
-     * Load library data from {libraryName}.json files in specified folder.
+     * Load library data from {libraryName}.json files in specified folder. Binary libraries ({libraryName}.bin), if
+     * present, take precedence over json files.
      */
     public static final class ClasspathLibraryResolver implements LibraryResolver, AliasResolver, LibraryNameListProvider {
         private final String path;
@@ -795,10 +973,13 @@ public final class VDJCLibraryRegistry {
         @Override
         public List<String> getLibraryNameList() {
             Reflections reflections = new Reflections("libraries", new ResourcesScanner());
-            Set<String> resources = reflections.getResources(Pattern.compile(".*\\.json"));
+            Set<String> resources = reflections.getResources(Pattern.compile(".*(?:\\.json|\\.bin)"));
             List<String> result = new ArrayList<>();
-            for (String resource : resources)
-                result.add(libraryNameFromFileName(resource).replace("libraries/", ""));
+            for (String resource : resources) {
+                String name = libraryNameFromFileName(resource).replace("libraries/", "");
+                if (!result.contains(name))
+                    result.add(name);
+            }
             return result;
         }
 
@@ -815,6 +996,10 @@ public final class VDJCLibraryRegistry {
 
         @Override
         public VDJCLibraryData[] resolve(String libraryName) {
+            VDJCLibraryData[] binary = resolveBinary(libraryName);
+            if (binary != null)
+                return binary;
+
             try (InputStream stream = classLoader.getResourceAsStream(path + libraryName + ".json")) {
                 if (stream == null)
                     return null;
@@ -825,6 +1010,23 @@ public final class VDJCLibraryRegistry {
                 throw new RuntimeException(e);
             }
         }
+
+        private VDJCLibraryData[] resolveBinary(String libraryName) {
+            URL url = classLoader.getResource(path + libraryName + BinaryLibraryFormat.EXTENSION);
+            if (url == null)
+                return null;
+            try {
+                // Resources located on file system (e.g. exploded classpath folders) are memory-mapped
+                if ("file".equals(url.getProtocol()))
+                    return BinaryLibraryFormat.readFromFile(Paths.get(url.toURI()));
+
+                try (InputStream stream = url.openStream()) {
+                    return BinaryLibraryFormat.readFromStream(stream);
+                }
+            } catch (IOException | URISyntaxException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
     private static final class LibraryLoadRequest {
@@ -22,4 +22,8 @@ public final class KnownVDJCLibraryMetaFields {
     public static final String COMMENTS = "comments";
     public static final String WARNINGS = "warnings";
     public static final String CITATIONS = "citations";
+    /**
+     * Hex-encoded library checksum (see {@link io.repseq.core.VDJCLibrary#getChecksum()}), stored by compile action
+     */
+    public static final String CHECKSUM = "checksum";
 }
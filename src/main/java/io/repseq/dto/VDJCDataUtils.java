@@ -19,6 +19,7 @@ import com.milaboratory.core.Range;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.provider.CachedSequenceProvider;
 import com.milaboratory.util.GlobalObjectMappers;
+import io.repseq.core.BinaryLibraryFormat;
 
 import java.io.*;
 import java.net.URI;
@@ -126,6 +127,8 @@ public final class VDJCDataUtils {
                         values.addAll(entry.getValue());
                     }
                 }
+                // Stored checksums are not valid for the merged library
+                meta.remove(KnownVDJCLibraryMetaFields.CHECKSUM);
 
                 // Putting back merged result
                 resultMap.put(library1.getTaxonId(), new VDJCLibraryData(library1.getTaxonId(), speciesNames, genes,
@@ -183,6 +186,10 @@ public final class VDJCDataUtils {
     }
 
     public static VDJCLibraryData[] readArrayFromFile(Path file) throws IOException {
+        // Binary compiled library
+        if (BinaryLibraryFormat.isBinaryLibraryFile(file.getFileName().toString()))
+            return BinaryLibraryFormat.readFromFile(file);
+
         // Ungzipping if file name ends with .gz
         try (InputStream is = file.getFileName().toString().endsWith(".gz") ?
                 new BufferedInputStream(new GZIPInputStream(new FileInputStream(file.toFile()))) :
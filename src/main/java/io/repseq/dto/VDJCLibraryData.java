@@ -46,6 +46,8 @@ public final class VDJCLibraryData implements Comparable<VDJCLibraryData> {
         this.speciesNames = new ArrayList<>(other.speciesNames); // clone just in case
         this.genes = genes;
         this.meta = new TreeMap<>(other.meta); // clone just in case
+        // Stored checksum is not valid for the new gene list
+        this.meta.remove(KnownVDJCLibraryMetaFields.CHECKSUM);
         this.sequenceFragments = new ArrayList<>(other.sequenceFragments); // clone just in case
     }
 
@@ -78,4 +78,73 @@ public final class ConcatenatedLazySequence<S extends Sequence<S>> implements Se
         S result = seq.createAndDestroy();
         return range.isReverse() ? result.getRange(result.size(), 0) : result;
     }
+
+    /**
+     * Copies letter codes of the region into buffer. Codes of the parts created with {@link #inMemory(Sequence)} are
+     * copied directly, other parts are extracted with {@link SequenceProvider#getRegion(Range)} one by one, without
+     * concatenation of the whole region.
+     *
+     * @param begin  region begin
+     * @param end    region end (region is reversed if {@code begin > end})
+     * @param buffer destination buffer
+     * @param offset position in destination buffer
+     */
+    public void copyCodes(int begin, int end, byte[] buffer, int offset) {
+        if (begin > end) {
+            // Reverse complement is calculated by the sequence itself
+            S seq = getRegion(new Range(begin, end));
+            for (int i = 0; i < seq.size(); ++i)
+                buffer[offset + i] = seq.codeAt(i);
+            return;
+        }
+        if (end > size())
+            throw new IllegalArgumentException("Can't get sequence outside defined region.");
+        int position = 0;
+        for (SequenceProvider<S> provider : providers) {
+            if (position >= end)
+                break;
+            int size = provider.size(), from = Math.max(begin, position), to = Math.min(end, position + size);
+            if (from < to) {
+                S seq = provider instanceof InMemoryProvider ?
+                        ((InMemoryProvider<S>) provider).sequence :
+                        provider.getRegion(new Range(from - position, to - position));
+                int shift = provider instanceof InMemoryProvider ? position : from;
+                for (int i = from; i < to; ++i)
+                    buffer[offset++] = seq.codeAt(i - shift);
+            }
+            position += size;
+        }
+    }
+
+    /**
+     * Creates part of concatenated sequence from in-memory sequence
+     *
+     * @param sequence sequence
+     * @return sequence provider
+     */
+    public static <S extends Sequence<S>> SequenceProvider<S> inMemory(S sequence) {
+        return new InMemoryProvider<>(sequence);
+    }
+
+    private static final class InMemoryProvider<S extends Sequence<S>> implements SequenceProvider<S> {
+        final S sequence;
+
+        InMemoryProvider(S sequence) {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void forceInitialize() {
+        }
+
+        @Override
+        public int size() {
+            return sequence.size();
+        }
+
+        @Override
+        public S getRegion(Range range) {
+            return sequence.getRange(range);
+        }
+    }
 }
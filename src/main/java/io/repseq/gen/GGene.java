@@ -25,8 +25,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static com.fasterxml.jackson.annotation.JsonProperty.Access.READ_ONLY;
-import static com.milaboratory.core.sequence.provider.SequenceProviderUtils.fromSequence;
 import static com.milaboratory.core.sequence.provider.SequenceProviderUtils.subProvider;
+import static io.repseq.gen.ConcatenatedLazySequence.inMemory;
 
 /**
  * Represents rearranged TCR/IG gene / sequence.
@@ -85,10 +85,10 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
         if (vdjcGenes.v != null) {
             // Case with normal rearrangement
             // Working with non-reversed V gene view (in case V gene is on antisense chromosome strand)
-            SequenceProviderAndReferencePoints vsprp = vdjcGenes.v.getSPAndRPs().nonReversedView();
+            SequenceProviderAndReferencePoints vsprp = vdjcGenes.v.getNonReversedSPAndRPs();
             pointsBuilder.setPositionsFrom(vdjTrimming.vTrimming >= 0 ?
-                    vsprp.referencePoints :
-                    vsprp.referencePoints.without(ReferencePoint.VEnd));
+                    vsprp.referencePoints.view() :
+                    vsprp.referencePoints.view().without(ReferencePoint.VEnd));
             pointsBuilder.setPosition(ReferencePoint.V5UTRBeginTrimmed, vsprp.referencePoints.getPosition(ReferencePoint.UTR5Begin));
             int vEndPosition = vsprp.referencePoints.getPosition(ReferencePoint.VEnd);
             currentLength += vdjTrimming.vTrimming + vEndPosition;
@@ -99,7 +99,7 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
                 sProviders.add(subProvider(vsprp.sequenceProvider, new Range(0, vEndPosition)));
                 // V-P-segment
                 if (vdjTrimming.vTrimming != 0)
-                    sProviders.add(fromSequence(
+                    sProviders.add(inMemory(
                             vsprp.getFeature(new GeneFeature(ReferencePoint.VEnd, 0, -vdjTrimming.vTrimming))
                     ));
             } else // without P-segment
@@ -109,14 +109,14 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
                 sProviders.add(subProvider(vsprp.sequenceProvider, new Range(0, vEndPosition + vdjTrimming.vTrimming)));
 
             pointsBuilder.setPosition(ReferencePoint.VEndTrimmed, currentLength);
-            sProviders.add(fromSequence(vInsert));
+            sProviders.add(inMemory(vInsert));
             currentLength += vInsert.size();
 
             // Adding D gene, if present
             if (vdjcGenes.d != null) {
                 pointsBuilder.setPosition(ReferencePoint.DBeginTrimmed, currentLength);
                 // Adding reference points from D gene
-                ReferencePoints pointsToAdd = vdjcGenes.d.getPartitioning()
+                ReferencePointsView pointsToAdd = vdjcGenes.d.getPartitioning().view()
                         .move(currentLength + dTrimming.d5Trimming
                                 - vdjcGenes.d.getPartitioning().getPosition(ReferencePoint.DBegin));
                 // If deletions on the 5' side of D gene, DBegin not covered
@@ -129,7 +129,7 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
 
                 // D-5'-P-segment
                 if (dTrimming.d5Trimming > 0) {
-                    sProviders.add(fromSequence(
+                    sProviders.add(inMemory(
                             vdjcGenes.d.getFeature(new GeneFeature(ReferencePoint.DBegin,
                                     dTrimming.d5Trimming, 0))
                     ));
@@ -140,12 +140,12 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
                 NucleotideSequence dGene = vdjcGenes.d.getFeature(
                         new GeneFeature(GeneFeature.DRegion,
                                 -Math.min(dTrimming.d5Trimming, 0), Math.min(dTrimming.d3Trimming, 0)));
-                sProviders.add(fromSequence(dGene));
+                sProviders.add(inMemory(dGene));
                 currentLength += dGene.size();
 
                 // D-5'-P-segment
                 if (dTrimming.d3Trimming > 0) {
-                    sProviders.add(fromSequence(
+                    sProviders.add(inMemory(
                             vdjcGenes.d.getFeature(new GeneFeature(ReferencePoint.DEnd,
                                     0, -dTrimming.d3Trimming))
                     ));
@@ -153,7 +153,7 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
                 }
                 pointsBuilder.setPosition(ReferencePoint.DEndTrimmed, currentLength);
                 // Adding D-J insert
-                sProviders.add(fromSequence(djInsert));
+                sProviders.add(inMemory(djInsert));
                 currentLength += djInsert.size();
             }
         } else {
@@ -164,12 +164,12 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
         pointsBuilder.setPosition(ReferencePoint.JBeginTrimmed, currentLength);
 
         // Working with non-reversed J gene view (in case J gene is on antisense chromosome strand)
-        SequenceProviderAndReferencePoints jsprp = vdjcGenes.j.getSPAndRPs().nonReversedView();
+        SequenceProviderAndReferencePoints jsprp = vdjcGenes.j.getNonReversedSPAndRPs();
 
         // Adding J gene reference points
         int jBeginPosition = jsprp.referencePoints.getPosition(ReferencePoint.JBegin);
         int jBaseSequenceOffset = currentLength + vdjTrimming.jTrimming - jBeginPosition;
-        ReferencePoints jPointToAdd = jsprp.referencePoints.move(jBaseSequenceOffset);
+        ReferencePointsView jPointToAdd = jsprp.referencePoints.view().move(jBaseSequenceOffset);
         // If J has deletions, JBegin - not covered
         if (vdjTrimming.jTrimming < 0)
             jPointToAdd = jPointToAdd.without(ReferencePoint.JBegin);
@@ -177,7 +177,7 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
 
         // J-P-segment
         if (vdjTrimming.jTrimming > 0) {
-            sProviders.add(fromSequence(
+            sProviders.add(inMemory(
                     vdjcGenes.j.getFeature(new GeneFeature(ReferencePoint.JBegin,
                             vdjTrimming.jTrimming, 0))
             ));
@@ -193,7 +193,7 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
 
         if (vdjcGenes.c != null) {
             // Non-reversed view on C gene base sequence
-            SequenceProviderAndReferencePoints csprp = vdjcGenes.c.getSPAndRPs().nonReversedView();
+            SequenceProviderAndReferencePoints csprp = vdjcGenes.c.getNonReversedSPAndRPs();
 
             // Checking if J and C genes are on the same strand of the same chromosome (sequence)
             if (vdjcGenes.j.getSequenceProvider() == vdjcGenes.c.getSequenceProvider() &&
@@ -201,12 +201,12 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
                 // If so, sequence of C gene is already inside our concatenated provider,
                 // we only need to add C gene reference points
                 // in this case csprp.sequenceProvider equals to jsprp.sequenceProvider
-                pointsBuilder.setPositionsFrom(csprp.referencePoints.move(jBaseSequenceOffset));
+                pointsBuilder.setPositionsFrom(csprp.referencePoints.view().move(jBaseSequenceOffset));
             } else {
                 // If not - adding separate sequence provider for C gene
                 int cBegin = csprp.referencePoints.getPosition(ReferencePoint.CBegin);
                 sProviders.add(subProvider(csprp.sequenceProvider, new Range(cBegin, csprp.sequenceProvider.size())));
-                pointsBuilder.setPositionsFrom(csprp.referencePoints.move(currentLength - cBegin));
+                pointsBuilder.setPositionsFrom(csprp.referencePoints.view().move(currentLength - cBegin));
             }
         }
 
@@ -240,6 +240,15 @@ public final class GGene extends PartitionedSequenceCached<NucleotideSequence> {
         return referencePoints;
     }
 
+    /**
+     * Codes of inserts and P-segments are copied directly from in-memory sequences, without concatenation of the
+     * whole region
+     */
+    @Override
+    protected void copyCodes(int begin, int end, byte[] buffer, int offset) {
+        baseSequence.copyCodes(begin, end, buffer, offset);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
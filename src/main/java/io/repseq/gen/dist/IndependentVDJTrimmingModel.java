@@ -18,6 +18,7 @@ package io.repseq.gen.dist;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.repseq.core.VDJCGene;
+import io.repseq.core.VDJCLibrary;
 import io.repseq.gen.VDJCGenes;
 import io.repseq.gen.VDJTrimming;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -42,9 +43,9 @@ public final class IndependentVDJTrimmingModel implements VDJTrimmingModel {
 
     @Override
     public VDJTrimmingGenerator create(RandomGenerator random, List<VDJCGene> vGenes, List<VDJCGene> dGenes, List<VDJCGene> jGenes, List<VDJCGene> cGenes) {
-        final Map<VDJCGene, GeneTrimmingGenerator> vGenerators = new HashMap<>();
-        final Map<VDJCGene, DTrimmingGenerator> dGenerators = new HashMap<>();
-        final Map<VDJCGene, GeneTrimmingGenerator> jGenerators = new HashMap<>();
+        final GeneIndexed<GeneTrimmingGenerator> vGenerators = new GeneIndexed<>(vGenes);
+        final GeneIndexed<DTrimmingGenerator> dGenerators = new GeneIndexed<>(dGenes);
+        final GeneIndexed<GeneTrimmingGenerator> jGenerators = new GeneIndexed<>(jGenes);
 
         for (VDJCGene gene : vGenes)
             vGenerators.put(gene, v.create(random, gene));
@@ -69,6 +70,50 @@ public final class IndependentVDJTrimmingModel implements VDJTrimmingModel {
         };
     }
 
+    /**
+     * Gene -> value mapping. If all genes belong to the same library values are stored in array indexed by
+     * {@link VDJCGene#getOrdinal()}, otherwise falls back to hash map. Genes from other instances of the same library
+     * (e.g. loaded by a different registry) are resolved by name.
+     */
+    private static final class GeneIndexed<T> {
+        final VDJCLibrary library;
+        final Object[] values;
+        final Map<VDJCGene, T> map;
+
+        GeneIndexed(List<VDJCGene> genes) {
+            VDJCLibrary library = genes.isEmpty() ? null : genes.get(0).getParentLibrary();
+            for (VDJCGene gene : genes)
+                if (gene.getParentLibrary() != library || gene.getOrdinal() < 0) {
+                    library = null;
+                    break;
+                }
+            this.library = library;
+            this.values = library == null ? null : new Object[library.getGeneCount()];
+            this.map = library == null ? new HashMap<VDJCGene, T>() : null;
+        }
+
+        void put(VDJCGene gene, T value) {
+            if (values != null)
+                values[gene.getOrdinal()] = value;
+            else
+                map.put(gene, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(VDJCGene gene) {
+            if (values != null) {
+                if (gene.getParentLibrary() != library) {
+                    VDJCGene own = library.get(gene.getName());
+                    if (own == null || !own.equals(gene))
+                        return null;
+                    gene = own;
+                }
+                return (T) values[gene.getOrdinal()];
+            } else
+                return map.get(gene);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -16,9 +16,14 @@
 package io.repseq.maven;
 
 import io.repseq.cli.CompileAction;
+import io.repseq.core.BinaryLibraryFormat;
+import io.repseq.core.VDJCLibrary;
+import io.repseq.core.VDJCLibraryRegistry;
+import io.repseq.dto.KnownVDJCLibraryMetaFields;
 import io.repseq.dto.VDJCDataUtils;
 import io.repseq.dto.VDJCLibraryData;
 import io.repseq.seqbase.SequenceResolvers;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,8 +47,14 @@ import static java.util.Arrays.asList;
 public class CompileLibraryGradleStage {
     private static final Logger log = LoggerFactory.getLogger(CompileLibraryGradleStage.class);
 
+    /**
+     * Option to additionally emit binary version of each library (see {@link BinaryLibraryFormat})
+     */
+    public static final String BINARY_OPTION = "--binary";
+
     public static void main(String[] args) throws IOException, InterruptedException {
         Path root = Paths.get(args[0]);
+        boolean binary = asList(args).subList(1, args.length).contains(BINARY_OPTION);
 
         Path cacheFolder = root.resolve(".cache");
 
@@ -71,12 +82,17 @@ public class CompileLibraryGradleStage {
                     .inheritIO()
                     .start()
                     .waitFor();
-            process(libraryRepoFolder, cacheFolder, buildFolder, outputFolder, tag, tag.equals(currentTag));
+            process(libraryRepoFolder, cacheFolder, buildFolder, outputFolder, tag, tag.equals(currentTag), binary);
         }
     }
 
     public static void process(Path libraryRepoFolder, Path cacheFolder, Path buildFolder, Path outputFolder,
                                String tag, boolean isDefault) throws IOException, InterruptedException {
+        process(libraryRepoFolder, cacheFolder, buildFolder, outputFolder, tag, isDefault, false);
+    }
+
+    public static void process(Path libraryRepoFolder, Path cacheFolder, Path buildFolder, Path outputFolder,
+                               String tag, boolean isDefault, boolean binary) throws IOException, InterruptedException {
         SequenceResolvers.initDefaultResolver(cacheFolder);
 
         Files.createDirectories(buildFolder);
@@ -93,6 +109,8 @@ public class CompileLibraryGradleStage {
 
         log.info("Merged successfully.");
 
+        storeChecksums(mergeResult, buildFolder);
+
         Files.createDirectories(outputFolder);
 
         String fullLibraryName = "repseqio." + tag;
@@ -102,6 +120,14 @@ public class CompileLibraryGradleStage {
 
         VDJCDataUtils.writeToFile(mergeResult, resultPath, true);
 
+        if (binary) {
+            Path binaryPath = outputFolder.resolve(fullLibraryName + BinaryLibraryFormat.EXTENSION);
+
+            log.info("Writing {}", binaryPath);
+
+            BinaryLibraryFormat.writeToFile(asList(mergeResult), binaryPath);
+        }
+
         if (isDefault) {
             Path aliasPath = outputFolder.resolve("default.alias");
 
@@ -113,6 +139,19 @@ public class CompileLibraryGradleStage {
         }
     }
 
+    /**
+     * Calculates checksums of merged libraries and stores them in meta section, so they are not recalculated on each
+     * load of the library (checksums of merged parts are dropped during merge)
+     */
+    static void storeChecksums(VDJCLibraryData[] libs, Path context) {
+        VDJCLibraryRegistry registry = new VDJCLibraryRegistry();
+        for (int i = 0; i < libs.length; i++) {
+            VDJCLibrary library = registry.registerLibrary(context, "merged" + i, libs[i]);
+            libs[i].setMetaValue(KnownVDJCLibraryMetaFields.CHECKSUM,
+                    Hex.encodeHexString(VDJCLibrary.calculateChecksum(library.getGenes())));
+        }
+    }
+
     public static List<Path> compileDir(Path libraryRepoFolder, Path to) throws IOException {
         AtomicInteger counter = new AtomicInteger();
         List<Path> resultFiles = new ArrayList<>();
@@ -127,7 +166,7 @@ public class CompileLibraryGradleStage {
             else if (path.getFileName().toString().endsWith(".json")) {
                 Path resultPath = to.resolve("lib" + counter.incrementAndGet() + ".json");
                 resultFiles.add(resultPath);
-                CompileAction.compile(path, resultPath, 30);
+                CompileAction.compile(path, resultPath, 30, CompileAction.DEFAULT_PREFETCH_THREADS);
             }
         }
     }
@@ -23,6 +23,7 @@ import com.milaboratory.core.sequence.provider.SequenceProvider;
 import com.milaboratory.core.sequence.provider.SequenceProviderFactory;
 import com.milaboratory.core.sequence.provider.SequenceProviderUtils;
 import com.milaboratory.util.LongProcessReporter;
+import io.repseq.util.OffHeapSequenceProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,25 +31,51 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.TreeMap;
+import java.util.concurrent.*;
 
 public abstract class AbstractRAFastaResolver implements SequenceResolver {
     private static final Logger log = LoggerFactory.getLogger(AbstractRAFastaResolver.class);
 
     final boolean deleteOnError;
+    /**
+     * If true, resolved records are loaded into off-heap 2-bit packed storage
+     */
+    volatile boolean offHeapRecords = false;
 
     protected AbstractRAFastaResolver(boolean deleteOnError) {
         this.deleteOnError = deleteOnError;
     }
 
     /**
-     * Cache file name to random access reader
+     * Returns whether resolved records are loaded into off-heap storage
+     *
+     * @return whether resolved records are loaded into off-heap storage
+     */
+    public boolean isOffHeapRecords() {
+        return offHeapRecords;
+    }
+
+    /**
+     * Sets whether records resolved after this call are loaded (on first access to the record sequence) into off-heap
+     * 2-bit packed storage (see {@link OffHeapSequenceProvider}) instead of being read from FASTA file on each request.
+     * Useful for large genomic contexts (e.g. whole-locus records), as the storage occupies ~1/4 byte per nucleotide
+     * outside of Java heap.
+     *
+     * @param offHeapRecords true to load records into off-heap storage
      */
-    final TreeMap<String, RandomAccessFastaReader<NucleotideSequence>> readers = new TreeMap<>();
+    public void setOffHeapRecords(boolean offHeapRecords) {
+        this.offHeapRecords = offHeapRecords;
+    }
+
+    /**
+     * Cache file name to indexed FASTA file. File is downloaded / indexed by the first thread requesting it, other
+     * threads requesting the same file wait for the future; requests for other files are not blocked.
+     */
+    final ConcurrentHashMap<String, Future<IndexedFile>> readers = new ConcurrentHashMap<>();
     /**
      * Full record URI to sequence provider
      */
-    final TreeMap<URI, CachedSequenceProvider<NucleotideSequence>> records = new TreeMap<>();
+    final ConcurrentHashMap<URI, CachedSequenceProvider<NucleotideSequence>> records = new ConcurrentHashMap<>();
 
     /**
      * Extracts record name from original address
@@ -81,59 +108,105 @@ public abstract class AbstractRAFastaResolver implements SequenceResolver {
      */
     protected abstract Path getFASTAFile(SequenceAddress uri);
 
-    public synchronized RandomAccessFastaReader<NucleotideSequence> resolveReader(SequenceAddress address) {
-        for (int retry = 0; retry < 10; ++retry) {
-            // Getting reader key
-            String readerKey = resolveReaderId(address);
-
-            // Checking if reader already opened
-            RandomAccessFastaReader<NucleotideSequence> reader = readers.get(readerKey);
+    public RandomAccessFastaReader<NucleotideSequence> resolveReader(final SequenceAddress address) {
+        // Getting reader key
+        final String readerKey = resolveReaderId(address);
+
+        // Checking if file is already indexed (or is being downloaded / indexed by another thread)
+        Future<IndexedFile> future = readers.get(readerKey);
+        if (future == null) {
+            FutureTask<IndexedFile> task = new FutureTask<>(new Callable<IndexedFile>() {
+                @Override
+                public IndexedFile call() throws Exception {
+                    return openFile(address);
+                }
+            });
+            if ((future = readers.putIfAbsent(readerKey, task)) == null) {
+                // This thread opens the file
+                future = task;
+                task.run();
+            }
+        }
 
-            Path file = null;
+        try {
+            IndexedFile file = future.get();
+            // Each caller gets its own reader, as readers are not shared between threads
+            return new RandomAccessFastaReader<>(file.file, file.index, NucleotideSequence.ALPHABET);
+        } catch (ExecutionException e) {
+            // Next request will try to open the reader again
+            readers.remove(readerKey, future);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
 
+    /**
+     * Downloads and indexes the file. Invoked at most once at a time for each reader key, without holding any lock.
+     *
+     * Download errors are not retried here (HTTP resolvers retry them in {@link HTTPDownloadManager}). If the file
+     * can't be indexed (e.g. it was corrupted) and deleteOnError is set, the file and its index are removed, and the
+     * file is downloaded and indexed once again.
+     */
+    private IndexedFile openFile(SequenceAddress address) {
+        // Getting fasta file path
+        // Download occur here
+        Path file = getFASTAFile(address);
+        try {
+            return index(file);
+        } catch (RuntimeException e) {
+            if (!deleteOnError)
+                throw e;
+
+            // Something went wrong with file, removing for re-download.
+            log.warn("Error opening {}. Removing.", file, e);
             try {
-                // Getting fasta file path
-                // Download occur here
-                file = getFASTAFile(address);
-
-                // Creating or loading index
-                RandomAccessFastaIndex index = RandomAccessFastaIndex.index(file, true, getReporter());
-
-                // Caching reader
-                readers.put(readerKey, reader =
-                        new RandomAccessFastaReader<>(file, index,
-                                NucleotideSequence.ALPHABET));
-
-                return reader;
-            } catch (Exception e) {
-                // Something went wrong with file, removing for re-download.
-                log.warn("Error opening {}." + (deleteOnError ? " Removing." : ""), file, e);
-
-                // If deleteOnError flag is set,
-                // removing source file and index if exists
-                if (deleteOnError && file != null)
-                    try {
-                        Files.delete(file);
-                        Path indexFile = file.resolveSibling(file.getFileName() +
-                                RandomAccessFastaIndex.INDEX_SUFFIX);
-                        if (Files.exists(indexFile))
-                            Files.delete(indexFile);
-                    } catch (IOException e1) {
-                        throw new RuntimeException(e1);
-                    }
-
-                // Delay
-
-                try {
-                    Thread.sleep(1000 + 4000 * retry);
-                } catch (InterruptedException ex) {
-                    throw new RuntimeException(ex);
-                }
-
-                // Retry
+                Files.delete(file);
+                Files.deleteIfExists(file.resolveSibling(file.getFileName() + RandomAccessFastaIndex.INDEX_SUFFIX));
+            } catch (IOException e1) {
+                throw new RuntimeException(e1);
             }
+
+            return index(getFASTAFile(address));
+        }
+    }
+
+    /**
+     * Creates or loads index of the file
+     */
+    private IndexedFile index(Path file) {
+        try {
+            return new IndexedFile(file, RandomAccessFastaIndex.index(file, true, getReporter()));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Can't index " + file, e);
+        }
+    }
+
+    /**
+     * Opens sequence provider for the record. Invoked once per record URI, on first access to its sequence.
+     *
+     * @param address  original address
+     * @param recordId record id
+     * @return sequence provider for the record
+     */
+    protected SequenceProvider<NucleotideSequence> openRecord(SequenceAddress address, String recordId) {
+        return resolveReader(address).getSequenceProvider(recordId);
+    }
+
+    static final class IndexedFile {
+        final Path file;
+        final RandomAccessFastaIndex index;
+
+        IndexedFile(Path file, RandomAccessFastaIndex index) {
+            this.file = file;
+            this.index = index;
         }
-        throw new RuntimeException();
     }
 
     @Override
@@ -143,15 +216,21 @@ public abstract class AbstractRAFastaResolver implements SequenceResolver {
         CachedSequenceProvider<NucleotideSequence> provider = records.get(uri);
         if (provider == null) {
             final String recordId = resolveRecordId(uri);
-            records.put(uri, provider = new CachedSequenceProvider<>(
+            final boolean offHeap = offHeapRecords;
+            // Provider is lazy, so creation of the object is cheap; in case of a race, the first one wins
+            CachedSequenceProvider<NucleotideSequence> existing = records.putIfAbsent(uri, provider = new CachedSequenceProvider<>(
                     NucleotideSequence.ALPHABET,
                     SequenceProviderUtils.lazyProvider(new SequenceProviderFactory<NucleotideSequence>() {
                         @Override
                         public SequenceProvider<NucleotideSequence> create() {
-                            RandomAccessFastaReader<NucleotideSequence> fasta = resolveReader(address);
-                            return fasta.getSequenceProvider(recordId);
+                            SequenceProvider<NucleotideSequence> record = openRecord(address, recordId);
+                            return offHeap && !(record instanceof OffHeapSequenceProvider)
+                                    ? OffHeapSequenceProvider.pack(record)
+                                    : record;
                         }
                     })));
+            if (existing != null)
+                provider = existing;
         }
 
         return provider;
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.seqbase;
+
+import com.milaboratory.util.FormatUtils;
+import com.milaboratory.util.LongProcess;
+import com.milaboratory.util.LongProcessReporter;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Downloads files into local cache in parallel. Other HTTP requests (e.g. range requests) can be executed under the
+ * same limits and retry policy using {@link #execute(URI, Request)}.
+ *
+ * <ul>
+ * <li>number of simultaneous downloads from a single host is bounded, requests above the limit are queued (without
+ * occupying a thread)</li>
+ * <li>concurrent requests for the same target file are served by a single download</li>
+ * <li>failed attempts (I/O errors, 5xx and 429 status codes) are retried with exponential backoff; waiting for the
+ * next attempt doesn't occupy a thread or a connection slot; errors which can't be fixed by repeating the request
+ * are reported as {@link NonRetryableException}</li>
+ * <li>files are downloaded into temporary files and atomically moved to the target location, so existence of the
+ * target file means that it was completely downloaded</li>
+ * </ul>
+ *
+ * Connections are reused if allowed by the HTTP client (e.g. if it uses pooling connection manager).
+ */
+public final class HTTPDownloadManager {
+    private static final Logger log = LoggerFactory.getLogger(HTTPDownloadManager.class);
+    public static final int CHUNK_SIZE = 32768;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+    final HttpClient httpClient;
+    final int maxConnectionsPerHost;
+    final int maxAttempts;
+    final long retryDelayMillis;
+    /**
+     * Executes downloads, number of threads is bounded by total number of connection slots in use
+     */
+    final ExecutorService executor;
+    /**
+     * Schedules retries
+     */
+    final ScheduledExecutorService scheduler;
+    /**
+     * Host (scheme, host and port) to queue of its downloads
+     */
+    final ConcurrentHashMap<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    /**
+     * Target file to download in progress
+     */
+    final ConcurrentHashMap<Path, CompletableFuture<Path>> downloads = new ConcurrentHashMap<>();
+
+    public HTTPDownloadManager(HttpClient httpClient) {
+        this(httpClient, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    public HTTPDownloadManager(HttpClient httpClient, int maxConnectionsPerHost,
+                               int maxAttempts, long retryDelayMillis) {
+        if (maxConnectionsPerHost <= 0 || maxAttempts <= 0 || retryDelayMillis < 0)
+            throw new IllegalArgumentException();
+        this.httpClient = httpClient;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelayMillis;
+        this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("download"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("download-retry"));
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Single attempt of HTTP request
+     *
+     * @param <T> type of result
+     */
+    public interface Request<T> {
+        /**
+         * Performs the request. Connection must be released before return.
+         *
+         * @param httpClient http client
+         * @return result
+         * @throws IOException in case of error, the request is retried unless it is {@link NonRetryableException}
+         */
+        T execute(HttpClient httpClient) throws IOException;
+    }
+
+    /**
+     * Error which can't be fixed by repeating the request (e.g. 4xx status code), such errors are not retried
+     */
+    public static final class NonRetryableException extends IOException {
+        public NonRetryableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Starts execution of the request to the host of specified link, request is queued if maximal number of
+     * connections to the host is reached
+     *
+     * @param uri     link (used to determine the host)
+     * @param request request
+     * @return future of request result
+     */
+    public <T> CompletableFuture<T> executeAsync(URI uri, Request<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        getHostQueue(uri).submit(new Attempt<>(uri, request, future, 0));
+        return future;
+    }
+
+    /**
+     * Executes the request and waits for completion (see {@link #executeAsync(URI, Request)})
+     *
+     * @param uri     link (used to determine the host)
+     * @param request request
+     * @return request result
+     * @throws IOException if the last attempt failed with I/O error
+     */
+    public <T> T execute(URI uri, Request<T> request) throws IOException {
+        try {
+            return executeAsync(uri, request).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Starts download of the file (or joins download of the same target file already in progress). Completes
+     * immediately if target file already exists.
+     *
+     * @param uri      http/https link
+     * @param target   target file
+     * @param unGZIP   if true, downloaded content is decompressed
+     * @param reporter reporter for download progress
+     * @return future of the target file
+     */
+    public CompletableFuture<Path> downloadAsync(final URI uri, final Path target, final boolean unGZIP,
+                                                 final LongProcessReporter reporter) {
+        CompletableFuture<Path> future = downloads.get(target);
+        if (future != null)
+            return future;
+
+        final CompletableFuture<Path> created = new CompletableFuture<>();
+        if ((future = downloads.putIfAbsent(target, created)) != null)
+            return future;
+
+        if (Files.exists(target)) {
+            downloads.remove(target, created);
+            created.complete(target);
+            return created;
+        }
+
+        created.whenComplete(new BiConsumer<Path, Throwable>() {
+            @Override
+            public void accept(Path path, Throwable throwable) {
+                // Next request will either find the file or retry the download
+                downloads.remove(target, created);
+            }
+        });
+        getHostQueue(uri).submit(new Attempt<>(uri, new Request<Path>() {
+            @Override
+            public Path execute(HttpClient httpClient) throws IOException {
+                fetch(uri, target, unGZIP, reporter);
+                return target;
+            }
+        }, created, 0));
+        return created;
+    }
+
+    /**
+     * Downloads the file and waits for completion (see {@link #downloadAsync(URI, Path, boolean, LongProcessReporter)})
+     *
+     * @param uri      http/https link
+     * @param target   target file
+     * @param unGZIP   if true, downloaded content is decompressed
+     * @param reporter reporter for download progress
+     * @return target file
+     */
+    public Path download(URI uri, Path target, boolean unGZIP, LongProcessReporter reporter) {
+        try {
+            return downloadAsync(uri, target, unGZIP, reporter).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stops worker threads, downloads in progress are interrupted
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    HostQueue getHostQueue(URI uri) {
+        String key = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        HostQueue queue = hosts.get(key);
+        if (queue == null) {
+            HostQueue existing = hosts.putIfAbsent(key, queue = new HostQueue());
+            if (existing != null)
+                queue = existing;
+        }
+        return queue;
+    }
+
+    /**
+     * Performs single download attempt
+     */
+    void fetch(URI uri, Path target, boolean unGZIP, LongProcessReporter reporter) throws IOException {
+        HttpGet request = new HttpGet(uri);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp" + System.nanoTime());
+        log.debug("Downloading " + uri + " into " + target);
+        try {
+            HttpResponse resp = httpClient.execute(request);
+            HttpEntity entity = resp.getEntity();
+            int statusCode = resp.getStatusLine().getStatusCode();
+            if (statusCode != 200) {
+                // Connection is returned to the pool only after the entity is consumed
+                EntityUtils.consume(entity);
+                String message = "Status code (" + statusCode + ") != 200 for " + uri;
+                if (statusCode >= 500 || statusCode == 429)
+                    throw new IOException(message);
+                throw new NonRetryableException(message);
+            }
+
+            long contentLength = entity.getContentLength();
+            try (LongProcess lp = reporter.start("Downloading " + uri);
+                 InputStream istream = unGZIP ?
+                         new GZIPInputStream(new BufferedInputStream(entity.getContent())) :
+                         new BufferedInputStream(entity.getContent());
+                 OutputStream ostream = new FileOutputStream(tmp.toFile())) {
+                long startTimestamp = System.nanoTime();
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int read;
+                long done = 0;
+                while ((read = istream.read(buffer)) > 0) {
+                    ostream.write(buffer, 0, read);
+                    if (contentLength >= 0)
+                        lp.reportStatus(1.0 * (done += read) / contentLength);
+                }
+                log.debug(uri + " downloaded in " +
+                        FormatUtils.nanoTimeToString(System.nanoTime() - startTimestamp));
+            }
+            EntityUtils.consume(entity);
+
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+            request.releaseConnection();
+        }
+    }
+
+    final class Attempt<T> implements Runnable {
+        final URI uri;
+        final Request<T> request;
+        final CompletableFuture<T> future;
+        final int attempt;
+
+        Attempt(URI uri, Request<T> request, CompletableFuture<T> future, int attempt) {
+            this.uri = uri;
+            this.request = request;
+            this.future = future;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(request.execute(httpClient));
+            } catch (IOException e) {
+                if (e instanceof NonRetryableException || attempt + 1 >= maxAttempts) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                long delay = retryDelayMillis << attempt;
+                log.warn("Error requesting {}, retrying in {} ms.", uri, delay, e);
+                try {
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            getHostQueue(uri).submit(new Attempt<>(uri, request, future, attempt + 1));
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    future.completeExceptionally(e);
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Limits number of simultaneous downloads from a single host
+     */
+    final class HostQueue {
+        int active = 0;
+        final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+
+        void submit(Runnable task) {
+            synchronized (this) {
+                if (active >= maxConnectionsPerHost) {
+                    pending.add(task);
+                    return;
+                }
+                ++active;
+            }
+            execute(task);
+        }
+
+        private void execute(final Runnable task) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        next();
+                    }
+                }
+            });
+        }
+
+        private void next() {
+            Runnable task;
+            synchronized (this) {
+                task = pending.poll();
+                if (task == null) {
+                    --active;
+                    return;
+                }
+            }
+            execute(task);
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        final String prefix;
+        final AtomicInteger counter = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
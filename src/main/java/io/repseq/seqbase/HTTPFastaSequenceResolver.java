@@ -15,25 +15,25 @@
  */
 package io.repseq.seqbase;
 
-import com.milaboratory.util.FormatUtils;
-import com.milaboratory.util.LongProcess;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
 import com.milaboratory.util.LongProcessReporter;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpGet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.GZIPInputStream;
 
 public abstract class HTTPFastaSequenceResolver extends AbstractRAFastaResolver
         implements OptionalSequenceResolver {
     private static final Logger log = LoggerFactory.getLogger(HTTPFastaSequenceResolver.class);
-    public static final int CHUNK_SIZE = 32768;
+    public static final int CHUNK_SIZE = HTTPDownloadManager.CHUNK_SIZE;
+    /**
+     * Suffix of the directory with sparse cache of the remote file (see {@link #setRangeRequests(boolean)})
+     */
+    public static final String CHUNKS_DIR_SUFFIX = ".chunks";
     /**
      * Local reporter
      */
@@ -42,6 +42,10 @@ public abstract class HTTPFastaSequenceResolver extends AbstractRAFastaResolver
      * Resolver context
      */
     final HTTPResolversContext context;
+    /**
+     * If true, only parts of uncompressed remote files covering requested regions are retrieved
+     */
+    volatile boolean rangeRequests = false;
 
     public HTTPFastaSequenceResolver(HTTPResolversContext context) {
         super(true);
@@ -49,6 +53,28 @@ public abstract class HTTPFastaSequenceResolver extends AbstractRAFastaResolver
         this.reporter = context.getReporter(this.getClass());
     }
 
+    /**
+     * Returns whether only parts of remote files covering requested regions are retrieved
+     *
+     * @return whether range requests are used
+     */
+    public boolean isRangeRequests() {
+        return rangeRequests;
+    }
+
+    /**
+     * Sets whether only parts of uncompressed remote FASTA files covering requested regions are retrieved using HTTP
+     * range requests, instead of downloading the whole file. Retrieved parts are cached on disk in a sparse form.
+     * If the server doesn't support range requests or record layout can't be determined (see
+     * {@link HTTPRangeSequenceProvider}), the whole file is downloaded as usual. Compressed (".gz") files are always
+     * downloaded as a whole.
+     *
+     * @param rangeRequests true to use range requests
+     */
+    public void setRangeRequests(boolean rangeRequests) {
+        this.rangeRequests = rangeRequests;
+    }
+
     public Path getCacheDir() {
         return context.getCacheDir();
     }
@@ -91,7 +117,34 @@ public abstract class HTTPFastaSequenceResolver extends AbstractRAFastaResolver
     }
 
     @Override
-    protected synchronized Path getFASTAFile(SequenceAddress address) {
+    protected SequenceProvider<NucleotideSequence> openRecord(SequenceAddress address, String recordId) {
+        URI httpURI = resolveHTTPAddress(address.getUri());
+        if (!rangeRequests || httpURI.getPath().endsWith(".gz"))
+            return super.openRecord(address, recordId);
+
+        String cacheFileName = resolveCacheFileName(address.getUri());
+        // Whole file was already downloaded
+        if (Files.exists(getCacheDir().resolve(cacheFileName)))
+            return super.openRecord(address, recordId);
+
+        try {
+            return HTTPRangeSequenceProvider.open(context.getDownloadManager(), httpURI,
+                    getCacheDir().resolve(cacheFileName + CHUNKS_DIR_SUFFIX),
+                    HTTPRangeSequenceProvider.DEFAULT_CHUNK_SIZE, recordId);
+        } catch (IOException e) {
+            log.warn("Can't use range requests for {}, downloading the whole file.", httpURI, e);
+            return super.openRecord(address, recordId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Not synchronized: concurrent requests for the same file are deduplicated by {@link AbstractRAFastaResolver}
+     * and {@link HTTPDownloadManager}, and requests for different files are downloaded in parallel.
+     */
+    @Override
+    protected Path getFASTAFile(SequenceAddress address) {
         final URI uri = address.getUri();
 
         // Resolving address to cache file name
@@ -112,41 +165,7 @@ public abstract class HTTPFastaSequenceResolver extends AbstractRAFastaResolver
         URI httpURI = resolveHTTPAddress(uri);
 
         // Downloading file
-        HttpGet request = new HttpGet(httpURI);
-        request.addHeader("Connection", "close");
-
         boolean unGZIP = httpURI.getPath().endsWith(".gz");
-        log.debug("Downloading " + httpURI + " into " + file);
-        try {
-            HttpResponse resp = context.getHttpClient().execute(request);
-            HttpEntity entity = resp.getEntity();
-            long contentLength = entity.getContentLength();
-            if (resp.getStatusLine().getStatusCode() != 200)
-                throw new RuntimeException("Status code (" + resp.getStatusLine().getStatusCode() + ") != 200");
-            try (LongProcess lp = reporter.start("Downloading " + httpURI);
-                 InputStream istream = unGZIP ?
-                         new GZIPInputStream(new BufferedInputStream(entity.getContent())) :
-                         new BufferedInputStream(entity.getContent());
-                 OutputStream ostream = new FileOutputStream(file.toFile())) {
-                long startTimestamp = System.nanoTime();
-                byte[] buffer = new byte[CHUNK_SIZE];
-                int read;
-                long done = 0;
-                while ((read = istream.read(buffer)) > 0) {
-                    ostream.write(buffer, 0, read);
-                    if (contentLength >= 0)
-                        lp.reportStatus(1.0 * (done += read) / contentLength);
-                }
-                log.debug(httpURI + " downloaded in " +
-                        FormatUtils.nanoTimeToString(System.nanoTime() - startTimestamp));
-            }
-
-            return file;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            if (request != null)
-                request.releaseConnection();
-        }
+        return context.getDownloadManager().download(httpURI, file, unGZIP, reporter);
     }
 }
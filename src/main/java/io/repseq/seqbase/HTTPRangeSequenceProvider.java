@@ -0,0 +1,459 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.seqbase;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Provides sequence of a single record of remote uncompressed FASTA file, retrieving only the parts of the file
+ * covering requested regions using HTTP range requests.
+ *
+ * Retrieved parts of the file are cached on disk in a sparse form: the file is split into fixed-size chunks, each
+ * retrieved chunk is stored as a separate file in the chunk directory. Layout of records (samtools faidx format) is
+ * stored in the same directory in "index.fai" file. Requests are executed by {@link HTTPDownloadManager}, sharing its
+ * per-host connection limit and retry policy with downloads of whole files.
+ *
+ * Record layout is taken from the remote index ({@code <url>.fai}, only for links without query string) if it is
+ * available and valid, otherwise it is probed from the first and the last chunks of the file. Probing works only for
+ * files with a single record with uniform line length (e.g. records served by sequence databases).
+ */
+final class HTTPRangeSequenceProvider implements SequenceProvider<NucleotideSequence> {
+    static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    static final String INDEX_FILE_NAME = "index.fai";
+    static final String CHUNK_SUFFIX = ".chunk";
+
+    final HTTPDownloadManager downloadManager;
+    final URI uri;
+    final Path chunkDir;
+    final int chunkSize;
+    final Layout layout;
+
+    HTTPRangeSequenceProvider(HTTPDownloadManager downloadManager, URI uri, Path chunkDir, int chunkSize,
+                              Layout layout) {
+        this.downloadManager = downloadManager;
+        this.uri = uri;
+        this.chunkDir = chunkDir;
+        this.chunkSize = chunkSize;
+        this.layout = layout;
+    }
+
+    /**
+     * Opens record of remote FASTA file
+     *
+     * @param downloadManager download manager to execute requests
+     * @param uri             http/https link to uncompressed FASTA file
+     * @param chunkDir        directory to store retrieved chunks in
+     * @param chunkSize       chunk size
+     * @param recordId        record id
+     * @return sequence provider for the record
+     * @throws IOException if record layout can't be determined or server doesn't support range requests
+     */
+    static HTTPRangeSequenceProvider open(HTTPDownloadManager downloadManager, URI uri, Path chunkDir, int chunkSize,
+                                          String recordId) throws IOException {
+        Files.createDirectories(chunkDir);
+        Path indexFile = chunkDir.resolve(INDEX_FILE_NAME);
+
+        if (!Files.exists(indexFile)) {
+            HTTPRangeSequenceProvider provider = new HTTPRangeSequenceProvider(downloadManager, uri, chunkDir,
+                    chunkSize, null);
+            // Checks support of range requests, and caches the first chunk
+            RangeResponse head = fetchRange(downloadManager, uri, 0, chunkSize - 1);
+            provider.writeChunks(0, head);
+
+            URI indexUri = indexUri(uri);
+            byte[] index = indexUri == null ? null : fetch(downloadManager, indexUri);
+            if (index == null || !Layout.isIndex(new String(index, StandardCharsets.US_ASCII))) {
+                Layout probed = provider.probe(head.data, head.totalSize, recordId);
+                index = probed.toFaiLine().getBytes(StandardCharsets.US_ASCII);
+            }
+            writeAtomically(indexFile, index);
+        }
+
+        Layout layout = Layout.find(new String(Files.readAllBytes(indexFile), StandardCharsets.US_ASCII), recordId);
+        if (layout == null)
+            throw new IOException("No record " + recordId + " in " + uri);
+        return new HTTPRangeSequenceProvider(downloadManager, uri, chunkDir, chunkSize, layout);
+    }
+
+    /**
+     * Returns link to the remote index of the file, or null if it can't be derived from the link (the link has query
+     * string, so it most probably points to a script and not to a static file)
+     */
+    static URI indexUri(URI uri) {
+        String path = uri.getRawPath();
+        if (uri.getRawQuery() != null || path == null || path.isEmpty() || path.endsWith("/"))
+            return null;
+        return URI.create(uri.getScheme() + "://" + uri.getRawAuthority() + path + ".fai");
+    }
+
+    /**
+     * Determines layout of the first record of the file, assuming that the file contains only this record
+     */
+    Layout probe(byte[] head, long totalSize, String recordId) throws IOException {
+        if (totalSize <= 0)
+            throw new IOException("Can't probe layout of " + uri + ": unknown file size.");
+        if (head.length == 0 || head[0] != '>')
+            throw new IOException("Can't probe layout of " + uri + ": no FASTA header.");
+        int headerEnd = indexOf(head, (byte) '\n', 0);
+        if (headerEnd < 0)
+            throw new IOException("Can't probe layout of " + uri + ": header is too long.");
+        String id = new String(head, 1, headerEnd - 1, StandardCharsets.US_ASCII).trim().split("\\s+", 2)[0];
+        if (!id.equals(recordId))
+            throw new IOException("Can't probe layout of " + uri + ": first record is " + id + ".");
+        int sequenceStart = headerEnd + 1;
+        int firstLineEnd = indexOf(head, (byte) '\n', sequenceStart);
+        if (firstLineEnd < 0)
+            throw new IOException("Can't probe layout of " + uri + ": line is too long.");
+        int lineWidth = firstLineEnd + 1 - sequenceStart;
+        int lineBases = firstLineEnd - sequenceStart - (head[firstLineEnd - 1] == '\r' ? 1 : 0);
+        if (lineBases <= 0)
+            throw new IOException("Can't probe layout of " + uri + ": empty line.");
+
+        // The last chunk shouldn't contain other records
+        long lastChunk = (totalSize - 1) / chunkSize;
+        byte[] tail = readChunk(lastChunk);
+        long end = lastChunk * chunkSize + tail.length;
+        int tailStart = lastChunk == 0 ? sequenceStart : 0;
+        if (indexOf(tail, (byte) '>', tailStart) >= 0)
+            throw new IOException("Can't probe layout of " + uri + ": several records.");
+        int i = tail.length;
+        while (i > tailStart && (tail[i - 1] == '\n' || tail[i - 1] == '\r'))
+            --i;
+        end -= tail.length - i;
+
+        long remaining = end - sequenceStart;
+        long rem = remaining % lineWidth;
+        if (rem > lineBases)
+            throw new IOException("Can't probe layout of " + uri + ": non-uniform line length.");
+        long length = remaining / lineWidth * lineBases + rem;
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("Record is too long.");
+        return new Layout(recordId, (int) length, sequenceStart, lineBases, lineWidth);
+    }
+
+    /**
+     * Does nothing, sequence is retrieved on request
+     */
+    @Override
+    public void forceInitialize() {
+    }
+
+    @Override
+    public int size() {
+        return layout.length;
+    }
+
+    @Override
+    public NucleotideSequence getRegion(Range range) {
+        int from = range.getLower(), to = range.getUpper();
+        if (from < 0 || to > layout.length) {
+            Range available = new Range(from, to).intersection(new Range(0, layout.length));
+            throw new SequenceProviderIndexOutOfBoundsException(
+                    available == null || !range.isReverse() ? available
+                            : new Range(available.getUpper(), available.getLower()));
+        }
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder()
+                .ensureCapacity(to - from);
+        if (from < to)
+            try {
+                long firstByte = layout.byteOffset(from), lastByte = layout.byteOffset(to - 1);
+                long firstChunk = firstByte / chunkSize, lastChunk = lastByte / chunkSize;
+                fetchMissing(firstChunk, lastChunk);
+                byte[] chunk = null;
+                long loadedChunk = -1;
+                for (int i = from; i < to; ++i) {
+                    long offset = layout.byteOffset(i);
+                    if (offset / chunkSize != loadedChunk)
+                        chunk = readChunk(loadedChunk = offset / chunkSize);
+                    int position = (int) (offset - loadedChunk * chunkSize);
+                    if (position >= chunk.length)
+                        throw new IOException("Truncated chunk " + loadedChunk + " of " + uri);
+                    byte code = NucleotideSequence.ALPHABET.symbolToCode(
+                            Character.toUpperCase((char) chunk[position]));
+                    if (code < 0)
+                        throw new IOException("Illegal nucleotide symbol at position " + i + " of " + layout.id);
+                    builder.append(code);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        NucleotideSequence seq = builder.createAndDestroy();
+        return range.isReverse() ? seq.getReverseComplement() : seq;
+    }
+
+    Path chunkFile(long chunk) {
+        return chunkDir.resolve(chunk + CHUNK_SUFFIX);
+    }
+
+    /**
+     * Retrieves missing chunks from the range, each run of consecutive missing chunks is retrieved by a single request
+     */
+    void fetchMissing(long firstChunk, long lastChunk) throws IOException {
+        long runStart = -1;
+        for (long chunk = firstChunk; chunk <= lastChunk + 1; ++chunk) {
+            boolean missing = chunk <= lastChunk && !Files.exists(chunkFile(chunk));
+            if (missing && runStart < 0)
+                runStart = chunk;
+            else if (!missing && runStart >= 0) {
+                fetchChunks(runStart, chunk - 1);
+                runStart = -1;
+            }
+        }
+    }
+
+    void fetchChunks(long firstChunk, long lastChunk) throws IOException {
+        writeChunks(firstChunk, fetchRange(downloadManager, uri,
+                firstChunk * chunkSize, (lastChunk + 1) * chunkSize - 1));
+    }
+
+    /**
+     * Stores retrieved chunks starting from the specified one. Only full chunks and the last chunk of the file are
+     * stored, so a stored chunk is never incomplete.
+     */
+    void writeChunks(long firstChunk, RangeResponse response) throws IOException {
+        for (int from = 0; from < response.data.length; from += chunkSize) {
+            long chunkStart = firstChunk * chunkSize + from;
+            int to = Math.min(response.data.length, from + chunkSize);
+            if (to - from == chunkSize || chunkStart + to - from == response.totalSize)
+                writeAtomically(chunkFile(firstChunk + from / chunkSize), Arrays.copyOfRange(response.data, from, to));
+        }
+    }
+
+    /**
+     * Returns content of the chunk, retrieving it if it is not cached yet
+     */
+    byte[] readChunk(long chunk) throws IOException {
+        Path file = chunkFile(chunk);
+        if (!Files.exists(file))
+            fetchChunks(chunk, chunk);
+        if (!Files.exists(file))
+            throw new IOException("Can't retrieve chunk " + chunk + " of " + uri);
+        return Files.readAllBytes(file);
+    }
+
+    static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp" + System.nanoTime());
+        try {
+            Files.write(tmp, content);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static int indexOf(byte[] array, byte value, int from) {
+        for (int i = from; i < array.length; ++i)
+            if (array[i] == value)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Retrieves the whole file, or returns null if it doesn't exist
+     */
+    static byte[] fetch(HTTPDownloadManager downloadManager, final URI uri) throws IOException {
+        return downloadManager.execute(uri, new HTTPDownloadManager.Request<byte[]>() {
+            @Override
+            public byte[] execute(HttpClient httpClient) throws IOException {
+                HttpGet request = new HttpGet(uri);
+                try {
+                    HttpResponse resp = httpClient.execute(request);
+                    HttpEntity entity = resp.getEntity();
+                    int statusCode = resp.getStatusLine().getStatusCode();
+                    if (statusCode != 200) {
+                        EntityUtils.consume(entity);
+                        if (statusCode == 404)
+                            return null;
+                        String message = "Status code (" + statusCode + ") != 200 for " + uri;
+                        if (statusCode >= 500 || statusCode == 429)
+                            throw new IOException(message);
+                        throw new HTTPDownloadManager.NonRetryableException(message);
+                    }
+                    return EntityUtils.toByteArray(entity);
+                } finally {
+                    request.releaseConnection();
+                }
+            }
+        });
+    }
+
+    /**
+     * Retrieves range of bytes of the file. Incomplete responses are retried, so the response contains all requested
+     * bytes, or all bytes up to the end of the file.
+     *
+     * @param from first byte (inclusive)
+     * @param to   last byte (inclusive)
+     */
+    static RangeResponse fetchRange(HTTPDownloadManager downloadManager, final URI uri,
+                                    final long from, final long to) throws IOException {
+        return downloadManager.execute(uri, new HTTPDownloadManager.Request<RangeResponse>() {
+            @Override
+            public RangeResponse execute(HttpClient httpClient) throws IOException {
+                HttpGet request = new HttpGet(uri);
+                request.addHeader("Range", "bytes=" + from + "-" + to);
+                try {
+                    HttpResponse resp = httpClient.execute(request);
+                    HttpEntity entity = resp.getEntity();
+                    int statusCode = resp.getStatusLine().getStatusCode();
+                    if (statusCode != 206) {
+                        EntityUtils.consume(entity);
+                        String message = "Range request to " + uri + " failed, status code (" + statusCode +
+                                ") != 206";
+                        if (statusCode >= 500 || statusCode == 429)
+                            throw new IOException(message);
+                        throw new HTTPDownloadManager.NonRetryableException(message);
+                    }
+                    // Content-Range: bytes 0-65535/123456
+                    Header contentRange = resp.getFirstHeader("Content-Range");
+                    String value = contentRange == null ? "" : contentRange.getValue().trim();
+                    long totalSize = value.startsWith("bytes " + from + "-") ? parseTotalSize(value) : -1;
+                    if (totalSize < 0) {
+                        EntityUtils.consume(entity);
+                        throw new HTTPDownloadManager.NonRetryableException("Unexpected range \"" + value +
+                                "\" from " + uri);
+                    }
+                    byte[] data = EntityUtils.toByteArray(entity);
+                    if (data.length != Math.min(to + 1, totalSize) - from)
+                        throw new IOException("Incomplete response for range " + from + "-" + to + " from " + uri +
+                                ": " + data.length + " bytes.");
+                    return new RangeResponse(data, totalSize);
+                } finally {
+                    request.releaseConnection();
+                }
+            }
+        });
+    }
+
+    /**
+     * Parses total size from Content-Range header value, returns -1 if it is not specified
+     */
+    static long parseTotalSize(String contentRange) {
+        int slash = contentRange.indexOf('/');
+        if (slash < 0)
+            return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static final class RangeResponse {
+        final byte[] data;
+        /**
+         * Total size of the file
+         */
+        final long totalSize;
+
+        RangeResponse(byte[] data, long totalSize) {
+            this.data = data;
+            this.totalSize = totalSize;
+        }
+    }
+
+    /**
+     * Position of the record in FASTA file (as in samtools faidx index)
+     */
+    static final class Layout {
+        final String id;
+        final int length;
+        /**
+         * Offset of the first nucleotide in the file
+         */
+        final long offset;
+        /**
+         * Number of nucleotides per line
+         */
+        final int lineBases;
+        /**
+         * Number of bytes per line, including line terminator
+         */
+        final int lineWidth;
+
+        Layout(String id, int length, long offset, int lineBases, int lineWidth) {
+            this.id = id;
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        long byteOffset(int position) {
+            return offset + (long) (position / lineBases) * lineWidth + position % lineBases;
+        }
+
+        String toFaiLine() {
+            return id + "\t" + length + "\t" + offset + "\t" + lineBases + "\t" + lineWidth + "\n";
+        }
+
+        /**
+         * Checks that the content is a non-empty samtools faidx index
+         */
+        static boolean isIndex(String fai) {
+            boolean empty = true;
+            for (String line : fai.split("\n")) {
+                if (line.trim().isEmpty())
+                    continue;
+                String[] fields = line.split("\t");
+                if (fields.length < 5)
+                    return false;
+                try {
+                    long length = Long.parseLong(fields[1]), offset = Long.parseLong(fields[2]),
+                            lineBases = Long.parseLong(fields[3]), lineWidth = Long.parseLong(fields[4]);
+                    if (length < 0 || offset < 0 || lineBases <= 0 || lineWidth < lineBases)
+                        return false;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                empty = false;
+            }
+            return !empty;
+        }
+
+        static Layout find(String fai, String id) throws IOException {
+            BufferedReader reader = new BufferedReader(new StringReader(fai));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 5 || !fields[0].equals(id))
+                    continue;
+                return new Layout(id, Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+            }
+            return null;
+        }
+    }
+}
@@ -21,15 +21,21 @@ import org.apache.http.client.HttpClient;
 import java.nio.file.Path;
 
 /**
- * Shared HTTP client and cache directory for HTTP sequence resolvers
+ * Shared HTTP client, download manager and cache directory for HTTP sequence resolvers
  */
 public class HTTPResolversContext {
     private final Path cacheDir;
     private final HttpClient httpClient;
+    private final HTTPDownloadManager downloadManager;
 
     public HTTPResolversContext(Path cacheDir, HttpClient httpClient) {
+        this(cacheDir, httpClient, new HTTPDownloadManager(httpClient));
+    }
+
+    public HTTPResolversContext(Path cacheDir, HttpClient httpClient, HTTPDownloadManager downloadManager) {
         this.cacheDir = cacheDir;
         this.httpClient = httpClient;
+        this.downloadManager = downloadManager;
     }
 
     public Path getCacheDir() {
@@ -40,6 +46,10 @@ public class HTTPResolversContext {
         return httpClient;
     }
 
+    public HTTPDownloadManager getDownloadManager() {
+        return downloadManager;
+    }
+
     public LongProcessReporter getReporter(Class<?> clazz) {
         return LongProcessReporter.DefaultLongProcessReporter.INSTANCE;
     }
@@ -15,17 +15,91 @@
  */
 package io.repseq.seqbase;
 
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
 import com.milaboratory.util.LongProcessReporter;
+import io.repseq.util.TwoBitFastaFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Resolves "file://" addresses. If an up-to-date 2-bit sidecar (see {@link TwoBitFastaFile}) exists next to the FASTA
+ * file, records are served from the memory-mapped sidecar, otherwise the text FASTA file is read using its index.
+ */
 public final class LocalFileResolver extends AbstractRAFastaResolver implements OptionalSequenceResolver {
+    private static final Logger log = LoggerFactory.getLogger(LocalFileResolver.class);
+
+    /**
+     * If true, FASTA files without up-to-date sidecar are converted to 2-bit format on first access
+     */
+    volatile boolean convertToTwoBit = false;
+    /**
+     * FASTA file to opened 2-bit sidecar
+     */
+    final ConcurrentHashMap<Path, TwoBitFastaFile> twoBitFiles = new ConcurrentHashMap<>();
+
     public LocalFileResolver() {
         super(false);
     }
 
+    /**
+     * Returns whether FASTA files are converted to 2-bit format on first access
+     *
+     * @return whether FASTA files are converted to 2-bit format on first access
+     */
+    public boolean isConvertToTwoBit() {
+        return convertToTwoBit;
+    }
+
+    /**
+     * Sets whether FASTA files without up-to-date 2-bit sidecar are converted on first access. Conversion is a
+     * one-time operation, sidecar is reused by all subsequent runs.
+     *
+     * @param convertToTwoBit true to convert FASTA files on first access
+     */
+    public void setConvertToTwoBit(boolean convertToTwoBit) {
+        this.convertToTwoBit = convertToTwoBit;
+    }
+
+    @Override
+    protected SequenceProvider<NucleotideSequence> openRecord(SequenceAddress address, String recordId) {
+        TwoBitFastaFile twoBitFile = getTwoBitFile(getFASTAFile(address));
+        if (twoBitFile != null && twoBitFile.getRecordIds().contains(recordId))
+            return twoBitFile.getSequenceProvider(recordId);
+        return super.openRecord(address, recordId);
+    }
+
+    /**
+     * Returns opened 2-bit sidecar for the FASTA file, or null if there is no usable sidecar
+     */
+    TwoBitFastaFile getTwoBitFile(Path fasta) {
+        TwoBitFastaFile twoBitFile = twoBitFiles.get(fasta);
+        if (twoBitFile != null)
+            return twoBitFile;
+
+        try {
+            if (!TwoBitFastaFile.hasSidecar(fasta)) {
+                if (!convertToTwoBit)
+                    return null;
+                // Concurrent conversions of the same file are harmless, as sidecar is replaced atomically
+                TwoBitFastaFile.convert(fasta);
+            }
+            twoBitFile = TwoBitFastaFile.open(TwoBitFastaFile.sidecarFor(fasta));
+        } catch (IOException e) {
+            log.warn("Can't use 2-bit sidecar for {}, falling back to FASTA file.", fasta, e);
+            return null;
+        }
+
+        TwoBitFastaFile existing = twoBitFiles.putIfAbsent(fasta, twoBitFile);
+        return existing == null ? twoBitFile : existing;
+    }
+
     @Override
     protected String resolveRecordId(URI address) {
         String recordId = address.getFragment();
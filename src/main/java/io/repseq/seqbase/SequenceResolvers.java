@@ -15,7 +15,6 @@
  */
 package io.repseq.seqbase;
 
-import org.apache.http.impl.NoConnectionReuseStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
@@ -24,14 +23,18 @@ import java.nio.file.Path;
 
 public class SequenceResolvers {
     private static volatile SequenceResolver defaultResolver = new MultiSequenceResolver(new LocalFileResolver(), new AnySequenceResolver());
+    private static volatile boolean offHeapRecords = false;
+    private static volatile boolean rangeRequests = false;
 
     public static void initDefaultResolver(Path cacheFolderPath) {
+        // Connections are reused, number of connections per host matches download concurrency
         PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setDefaultMaxPerRoute(HTTPDownloadManager.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        cm.setMaxTotal(4 * HTTPDownloadManager.DEFAULT_MAX_CONNECTIONS_PER_HOST);
         CloseableHttpClient httpClient = HttpClients.custom()
                 .disableCookieManagement()
                 .setConnectionManager(cm)
                 .disableContentCompression()
-                .setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE)
                 .setUserAgent("curl/7.64.1")
                 .build();
         HTTPResolversContext context = new HTTPResolversContext(
@@ -41,11 +44,46 @@ public class SequenceResolvers {
     }
 
     public static void initDefaultResolver(HTTPResolversContext context) {
-        defaultResolver = new MultiSequenceResolver(
+        defaultResolver = configure(new MultiSequenceResolver(
                 new LocalFileResolver(),
                 new HTTPSequenceResolvers.NucCoreResolver(context),
                 new HTTPSequenceResolvers.RAWHTTPResolver(context),
-                new AnySequenceResolver());
+                new AnySequenceResolver()));
+    }
+
+    /**
+     * Sets whether FASTA records resolved by default resolver are loaded into off-heap 2-bit storage (see {@link
+     * AbstractRAFastaResolver#setOffHeapRecords(boolean)}). Setting is applied to current default resolver and to
+     * all default resolvers created afterwards.
+     *
+     * @param offHeapRecords true to load records into off-heap storage
+     */
+    public static void setOffHeapRecords(boolean offHeapRecords) {
+        SequenceResolvers.offHeapRecords = offHeapRecords;
+        configure(defaultResolver);
+    }
+
+    /**
+     * Sets whether remote FASTA files are accessed by default resolver using HTTP range requests (see {@link
+     * HTTPFastaSequenceResolver#setRangeRequests(boolean)}). Setting is applied to current default resolver and to
+     * all default resolvers created afterwards.
+     *
+     * @param rangeRequests true to use range requests
+     */
+    public static void setRangeRequests(boolean rangeRequests) {
+        SequenceResolvers.rangeRequests = rangeRequests;
+        configure(defaultResolver);
+    }
+
+    private static SequenceResolver configure(SequenceResolver resolver) {
+        if (resolver instanceof MultiSequenceResolver)
+            for (OptionalSequenceResolver r : ((MultiSequenceResolver) resolver).resolvers) {
+                if (r instanceof AbstractRAFastaResolver)
+                    ((AbstractRAFastaResolver) r).setOffHeapRecords(offHeapRecords);
+                if (r instanceof HTTPFastaSequenceResolver)
+                    ((HTTPFastaSequenceResolver) r).setRangeRequests(rangeRequests);
+            }
+        return resolver;
     }
 
     public static SequenceResolver getDefault() {
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple thread-safe cache with bounded number of entries. Lookups never block. When number of entries exceeds the
+ * capacity, arbitrary entries are evicted until the cache is filled by half, so the cache never grows without limit
+ * even if it is queried with unlimited number of distinct keys.
+ *
+ * Null values are not supported, callers should use special marker objects to cache null results.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class BoundedConcurrentCache<K, V> {
+    private final ConcurrentHashMap<K, V> map = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final LongAdder hits = new LongAdder(),
+            misses = new LongAdder(),
+            evictions = new LongAdder();
+
+    /**
+     * Creates new cache
+     *
+     * @param capacity maximal number of entries
+     */
+    public BoundedConcurrentCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive.");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns cached value or null if there is no value for the key
+     *
+     * @param key key
+     * @return cached value or null
+     */
+    public V get(K key) {
+        V value = map.get(key);
+        if (value == null)
+            misses.increment();
+        else
+            hits.increment();
+        return value;
+    }
+
+    /**
+     * Puts value to the cache if there is no value for the key yet, and returns the value that is associated with
+     * the key (this allows all threads to observe the same object for the same key).
+     *
+     * @param key   key
+     * @param value value
+     * @return value associated with the key
+     */
+    public V putIfAbsent(K key, V value) {
+        V existing = map.putIfAbsent(key, value);
+        if (existing != null)
+            return existing;
+        if (map.size() > capacity)
+            evict();
+        return value;
+    }
+
+    private void evict() {
+        Iterator<K> it = map.keySet().iterator();
+        int target = capacity / 2;
+        while (map.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Removes all entries and resets statistics
+     */
+    public void clear() {
+        map.clear();
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Returns maximal number of entries
+     *
+     * @return maximal number of entries
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns snapshot of cache statistics
+     *
+     * @return snapshot of cache statistics
+     */
+    public Stats getStats() {
+        return new Stats(map.size(), capacity, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * Snapshot of cache statistics
+     */
+    public static final class Stats {
+        public final int size, capacity;
+        public final long hits, misses, evictions;
+
+        public Stats(int size, int capacity, long hits, long misses, long evictions) {
+            this.size = size;
+            this.capacity = capacity;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * Returns fraction of lookups that were answered from the cache
+         *
+         * @return fraction of lookups that were answered from the cache
+         */
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : 1.0 * hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + "/" + capacity + ", hits=" + hits + ", misses=" + misses +
+                    ", evictions=" + evictions + ", hitRate=" + String.format("%.3f", hitRate());
+        }
+    }
+}
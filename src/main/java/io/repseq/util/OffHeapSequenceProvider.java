@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sequence provider backed by off-heap memory, where the sequence is stored in 2-bit packed form, with wildcard
+ * positions kept in a separate exception list (see {@link TwoBitNucleotideCodec} for the record layout).
+ *
+ * Only the requested sub-range is decoded by {@link #getRegion(Range)}; the whole sequence is never materialized on
+ * heap. Thread-safe.
+ */
+public final class OffHeapSequenceProvider implements SequenceProvider<NucleotideSequence> {
+    /**
+     * Number of nucleotides requested from source provider at once during packing
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Direct buffer with a single record, accessed only using absolute get methods
+     */
+    private final ByteBuffer record;
+    private final int size;
+
+    private OffHeapSequenceProvider(ByteBuffer record) {
+        this.record = record;
+        this.size = TwoBitNucleotideCodec.length(record, 0);
+    }
+
+    /**
+     * Reads the whole sequence from source provider and packs it into off-heap memory
+     *
+     * @param source source provider
+     * @return off-heap provider with the same sequence
+     */
+    public static OffHeapSequenceProvider pack(SequenceProvider<NucleotideSequence> source) {
+        return pack(source, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates provider over existing record (e.g. memory-mapped region of a file). Buffer must be accessed only using
+     * absolute get methods.
+     *
+     * @param record buffer with a single record starting at position 0
+     * @return provider backed by the buffer
+     */
+    static OffHeapSequenceProvider wrap(ByteBuffer record) {
+        return new OffHeapSequenceProvider(record);
+    }
+
+    static OffHeapSequenceProvider pack(SequenceProvider<NucleotideSequence> source, int chunkSize) {
+        int length = source.size();
+        int basicSize = NucleotideSequence.ALPHABET.basicSize();
+
+        // Packed codes are written to temporary buffer, as number of exceptions (and so the offset of packed data in
+        // the record) is only known after the whole sequence is read
+        ByteBuffer packed = ByteBuffer.allocateDirect(TwoBitNucleotideCodec.packedSize(length));
+        int[] exceptionPositions = new int[16];
+        byte[] exceptionCodes = new byte[16];
+        int numberOfExceptions = 0;
+
+        int current = 0;
+        for (int chunkFrom = 0; chunkFrom < length; chunkFrom += chunkSize) {
+            NucleotideSequence chunk = source.getRegion(new Range(chunkFrom, Math.min(length, chunkFrom + chunkSize)));
+            for (int j = 0; j < chunk.size(); ++j) {
+                int i = chunkFrom + j;
+                byte code = chunk.codeAt(j);
+                if (code < basicSize)
+                    current |= code << ((i & 3) << 1);
+                else {
+                    if (numberOfExceptions == exceptionPositions.length) {
+                        exceptionPositions = Arrays.copyOf(exceptionPositions, numberOfExceptions * 2);
+                        exceptionCodes = Arrays.copyOf(exceptionCodes, numberOfExceptions * 2);
+                    }
+                    exceptionPositions[numberOfExceptions] = i;
+                    exceptionCodes[numberOfExceptions++] = code;
+                }
+                if ((i & 3) == 3) {
+                    packed.put((byte) current);
+                    current = 0;
+                }
+            }
+        }
+        if ((length & 3) != 0)
+            packed.put((byte) current);
+
+        ByteBuffer record = ByteBuffer.allocateDirect(TwoBitNucleotideCodec.recordSize(length, numberOfExceptions));
+        record.putInt(length);
+        record.putInt(numberOfExceptions);
+        for (int e = 0; e < numberOfExceptions; ++e) {
+            record.putInt(exceptionPositions[e]);
+            record.put(exceptionCodes[e]);
+        }
+        packed.flip();
+        record.put(packed);
+        record.clear();
+
+        return new OffHeapSequenceProvider(record);
+    }
+
+    /**
+     * Returns number of off-heap bytes occupied by this provider
+     *
+     * @return number of off-heap bytes occupied by this provider
+     */
+    public int getStorageSize() {
+        return record.capacity();
+    }
+
+    /**
+     * Does nothing, the whole sequence is loaded on packing
+     */
+    @Override
+    public void forceInitialize() {
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public NucleotideSequence getRegion(Range range) {
+        NucleotideSequence seq = TwoBitNucleotideCodec.read(record, 0, range.getLower(), range.getUpper());
+        return range.isReverse() ? seq.getReverseComplement() : seq;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Indexed 2-bit packed representation of a FASTA file, created by one-time conversion and stored next to the original
+ * file (see {@link #sidecarFor(Path)}). Records are memory-mapped on first request, so sequence regions are served
+ * by bit slicing of the mapped buffer, without parsing or any I/O calls per request.
+ *
+ * File layout (big-endian, records are encoded as in {@link TwoBitNucleotideCodec}):
+ *
+ * <pre>
+ * header:   magic "RSQIO2BF", int format version, long index offset
+ * records:  record * number of records
+ * index:    int number of records, (UTF record id, long record offset) * number of records
+ * </pre>
+ *
+ * Record id is the first whitespace-delimited token of the FASTA header line, the same way records are identified
+ * in URIs of file based sequence addresses. Thread-safe.
+ */
+public final class TwoBitFastaFile {
+    /**
+     * Suffix appended to the name of original FASTA file to get the name of the sidecar file
+     */
+    public static final String SIDECAR_SUFFIX = ".2bit.rsq";
+    static final byte[] MAGIC = "RSQIO2BF".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 4 + 8;
+
+    final Path file;
+    /**
+     * Record id to absolute offset of the record in the file
+     */
+    final Map<String, Long> offsets;
+
+    private TwoBitFastaFile(Path file, Map<String, Long> offsets) {
+        this.file = file;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns path of the sidecar file for the FASTA file
+     *
+     * @param fasta FASTA file
+     * @return path of the sidecar file
+     */
+    public static Path sidecarFor(Path fasta) {
+        return fasta.resolveSibling(fasta.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Returns true if sidecar file exists for the FASTA file and is not older than the FASTA file itself
+     *
+     * @param fasta FASTA file
+     * @return true if up-to-date sidecar file exists
+     */
+    public static boolean hasSidecar(Path fasta) {
+        Path sidecar = sidecarFor(fasta);
+        try {
+            return Files.isRegularFile(sidecar) &&
+                    Files.getLastModifiedTime(sidecar).compareTo(Files.getLastModifiedTime(fasta)) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the set of record ids
+     *
+     * @return the set of record ids
+     */
+    public Set<String> getRecordIds() {
+        return Collections.unmodifiableSet(offsets.keySet());
+    }
+
+    /**
+     * Memory-maps the record and returns provider backed by the mapped region
+     *
+     * @param recordId record id
+     * @return sequence provider
+     */
+    public SequenceProvider<NucleotideSequence> getSequenceProvider(String recordId) {
+        Long offset = offsets.get(recordId);
+        if (offset == null)
+            throw new IllegalArgumentException("No record with id \"" + recordId + "\" in " + file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            while (header.hasRemaining())
+                if (channel.read(header, offset + header.position()) < 0)
+                    throw new EOFException("Truncated record " + recordId + " in " + file);
+            int size = TwoBitNucleotideCodec.recordSize(header, 0);
+            // Mapping remains valid after the channel is closed
+            return OffHeapSequenceProvider.wrap(channel.map(FileChannel.MapMode.READ_ONLY, offset, size));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens existing 2-bit file, only the index is read
+     *
+     * @param file 2-bit file
+     * @return opened file
+     */
+    public static TwoBitFastaFile open(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new IOException("Not a 2-bit FASTA file: " + file);
+            int version = input.readInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported 2-bit FASTA format version " + version + ": " + file);
+            long indexOffset = input.readLong();
+
+            long toSkip = indexOffset - HEADER_SIZE;
+            while (toSkip > 0) {
+                long skipped = input.skip(toSkip);
+                if (skipped <= 0)
+                    throw new EOFException("Truncated file: " + file);
+                toSkip -= skipped;
+            }
+
+            int numberOfRecords = input.readInt();
+            HashMap<String, Long> offsets = new HashMap<>();
+            for (int i = 0; i < numberOfRecords; i++) {
+                String id = input.readUTF();
+                offsets.put(id, input.readLong());
+            }
+            return new TwoBitFastaFile(file, offsets);
+        }
+    }
+
+    /**
+     * Converts FASTA file to sidecar 2-bit file (see {@link #sidecarFor(Path)}). Sidecar is written to a temporary
+     * file first and then atomically moved to its place, so concurrent readers never see partially written files.
+     *
+     * @param fasta FASTA file
+     * @return path of the sidecar file
+     */
+    public static Path convert(Path fasta) throws IOException {
+        Path sidecar = sidecarFor(fasta);
+        Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp" + System.nanoTime());
+        try {
+            convert(fasta, tmp);
+            Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return sidecar;
+    }
+
+    /**
+     * Converts FASTA file to 2-bit file
+     *
+     * @param fasta  FASTA file
+     * @param output output file
+     */
+    public static void convert(Path fasta, Path output) throws IOException {
+        LinkedHashMap<String, Long> offsets = new LinkedHashMap<>();
+        long position = HEADER_SIZE;
+        try (BufferedReader reader = Files.newBufferedReader(fasta, StandardCharsets.US_ASCII);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(0); // index offset, written at the end
+
+            RecordPacker packer = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(">")) {
+                    if (packer != null)
+                        position += packer.write(out);
+                    String id = line.substring(1).trim().split("\\s+", 2)[0];
+                    if (offsets.put(id, position) != null)
+                        throw new IOException("Duplicate record id \"" + id + "\" in " + fasta);
+                    packer = new RecordPacker();
+                } else if (packer != null)
+                    packer.append(line);
+                else if (!line.trim().isEmpty())
+                    throw new IOException("Sequence without header in " + fasta);
+            }
+            if (packer != null)
+                position += packer.write(out);
+
+            out.writeInt(offsets.size());
+            for (Map.Entry<String, Long> e : offsets.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue());
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(output.toFile(), "rw")) {
+            raf.seek(MAGIC.length + 4);
+            raf.writeLong(position);
+        }
+    }
+
+    /**
+     * Accumulates single record in packed form, as number of exceptions (and so the offset of packed data in the
+     * record) is only known after the whole record is read
+     */
+    private static final class RecordPacker {
+        byte[] packed = new byte[1024];
+        int[] exceptionPositions = new int[16];
+        byte[] exceptionCodes = new byte[16];
+        int length = 0, numberOfExceptions = 0;
+
+        void append(String line) throws IOException {
+            int basicSize = NucleotideSequence.ALPHABET.basicSize();
+            for (int j = 0; j < line.length(); ++j) {
+                char symbol = line.charAt(j);
+                if (Character.isWhitespace(symbol))
+                    continue;
+                byte code = NucleotideSequence.ALPHABET.symbolToCode(Character.toUpperCase(symbol));
+                if (code < 0)
+                    throw new IOException("Illegal nucleotide symbol: " + symbol);
+                if (length == Integer.MAX_VALUE)
+                    throw new IOException("Record is too long.");
+
+                int byteIndex = length >>> 2;
+                if (byteIndex == packed.length)
+                    packed = Arrays.copyOf(packed, (int) Math.min(Integer.MAX_VALUE - 8, packed.length * 2L));
+                if (code < basicSize)
+                    packed[byteIndex] |= code << ((length & 3) << 1);
+                else {
+                    if (numberOfExceptions == exceptionPositions.length) {
+                        exceptionPositions = Arrays.copyOf(exceptionPositions, numberOfExceptions * 2);
+                        exceptionCodes = Arrays.copyOf(exceptionCodes, numberOfExceptions * 2);
+                    }
+                    exceptionPositions[numberOfExceptions] = length;
+                    exceptionCodes[numberOfExceptions++] = code;
+                }
+                ++length;
+            }
+        }
+
+        /**
+         * Writes record and returns its size in bytes
+         */
+        long write(DataOutput output) throws IOException {
+            output.writeInt(length);
+            output.writeInt(numberOfExceptions);
+            for (int e = 0; e < numberOfExceptions; ++e) {
+                output.writeInt(exceptionPositions[e]);
+                output.writeByte(exceptionCodes[e]);
+            }
+            output.write(packed, 0, TwoBitNucleotideCodec.packedSize(length));
+            return TwoBitNucleotideCodec.recordSize(length, numberOfExceptions);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes nucleotide sequences into compact 2-bit packed records.
+ *
+ * Record layout (big-endian):
+ *
+ * <pre>
+ * int    length                    number of nucleotides
+ * int    numberOfExceptions        number of wildcard (non-ACGT) positions
+ * (int position, byte code) * numberOfExceptions, sorted by position
+ * byte[(length + 3) / 4]           packed basic nucleotide codes, 4 per byte, lowest bits first
+ * </pre>
+ *
+ * Wildcard positions are stored as A (code 0) in the packed part, and restored from exception list on decoding.
+ * Random access to any sub-range of the record is possible without decoding the whole sequence.
+ */
+public final class TwoBitNucleotideCodec {
+    /**
+     * Size of single exception entry in bytes
+     */
+    static final int EXCEPTION_ENTRY_SIZE = 5;
+    /**
+     * Size of record header in bytes
+     */
+    static final int HEADER_SIZE = 8;
+
+    private TwoBitNucleotideCodec() {
+    }
+
+    /**
+     * Returns number of bytes required to store packed codes of sequence with specified length
+     *
+     * @param length number of nucleotides
+     * @return number of bytes required to store packed codes
+     */
+    public static int packedSize(int length) {
+        return (length + 3) >>> 2;
+    }
+
+    /**
+     * Returns size of the whole record (including header and exceptions) in bytes
+     *
+     * @param length             number of nucleotides
+     * @param numberOfExceptions number of wildcard positions
+     * @return size of the whole record in bytes
+     */
+    public static int recordSize(int length, int numberOfExceptions) {
+        return HEADER_SIZE + numberOfExceptions * EXCEPTION_ENTRY_SIZE + packedSize(length);
+    }
+
+    /**
+     * Returns size of the record starting at specified absolute position of the buffer
+     *
+     * @param buffer       buffer
+     * @param recordOffset absolute position of the record
+     * @return size of the record in bytes
+     */
+    public static int recordSize(ByteBuffer buffer, int recordOffset) {
+        return recordSize(buffer.getInt(recordOffset), buffer.getInt(recordOffset + 4));
+    }
+
+    /**
+     * Returns number of wildcard (non-ACGT) positions in the sequence
+     *
+     * @param seq sequence
+     * @return number of wildcard positions
+     */
+    public static int countExceptions(NucleotideSequence seq) {
+        int basicSize = NucleotideSequence.ALPHABET.basicSize();
+        int count = 0;
+        for (int i = 0; i < seq.size(); ++i)
+            if (seq.codeAt(i) >= basicSize)
+                ++count;
+        return count;
+    }
+
+    /**
+     * Writes sequence record
+     *
+     * @param output output
+     * @param seq    sequence
+     */
+    public static void write(DataOutput output, NucleotideSequence seq) throws IOException {
+        int basicSize = NucleotideSequence.ALPHABET.basicSize();
+        int length = seq.size();
+
+        // Header
+        output.writeInt(length);
+        output.writeInt(countExceptions(seq));
+
+        // Exceptions
+        for (int i = 0; i < length; ++i) {
+            byte code = seq.codeAt(i);
+            if (code >= basicSize) {
+                output.writeInt(i);
+                output.writeByte(code);
+            }
+        }
+
+        // Packed codes
+        int current = 0;
+        for (int i = 0; i < length; ++i) {
+            byte code = seq.codeAt(i);
+            if (code < basicSize)
+                current |= code << ((i & 3) << 1);
+            if ((i & 3) == 3) {
+                output.writeByte(current);
+                current = 0;
+            }
+        }
+        if ((length & 3) != 0)
+            output.writeByte(current);
+    }
+
+    /**
+     * Reads sequence record from current buffer position, and advances the position to the end of the record
+     *
+     * @param buffer buffer
+     * @return sequence
+     */
+    public static NucleotideSequence read(ByteBuffer buffer) {
+        int recordOffset = buffer.position();
+        NucleotideSequence seq = read(buffer, recordOffset, 0, buffer.getInt(recordOffset));
+        buffer.position(recordOffset + recordSize(buffer, recordOffset));
+        return seq;
+    }
+
+    /**
+     * Returns length of the sequence stored in the record starting at specified absolute position of the buffer
+     *
+     * @param buffer       buffer
+     * @param recordOffset absolute position of the record
+     * @return number of nucleotides
+     */
+    public static int length(ByteBuffer buffer, int recordOffset) {
+        return buffer.getInt(recordOffset);
+    }
+
+    /**
+     * Decodes sub-range of the record starting at specified absolute position of the buffer. Buffer position is not
+     * changed.
+     *
+     * @param buffer       buffer
+     * @param recordOffset absolute position of the record
+     * @param from         first nucleotide to extract (inclusive)
+     * @param to           last nucleotide to extract (exclusive)
+     * @return sequence
+     * @throws SequenceProviderIndexOutOfBoundsException if range is out of the record, exception contains the part of
+     *                                                   the range available in the record
+     */
+    public static NucleotideSequence read(ByteBuffer buffer, int recordOffset, int from, int to) {
+        if (from > to)
+            throw new IllegalArgumentException("from > to");
+        int length = buffer.getInt(recordOffset);
+        if (from < 0 || to > length)
+            throw new SequenceProviderIndexOutOfBoundsException(new Range(from, to).intersection(new Range(0, length)));
+
+        int numberOfExceptions = buffer.getInt(recordOffset + 4);
+        int exceptionsOffset = recordOffset + HEADER_SIZE;
+        int dataOffset = exceptionsOffset + numberOfExceptions * EXCEPTION_ENTRY_SIZE;
+
+        byte[] codes = new byte[to - from];
+        for (int i = from; i < to; ++i)
+            codes[i - from] = (byte) ((buffer.get(dataOffset + (i >>> 2)) >>> ((i & 3) << 1)) & 3);
+
+        // Searching for the first exception inside the range
+        int low = 0, high = numberOfExceptions;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(exceptionsOffset + mid * EXCEPTION_ENTRY_SIZE) < from)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        // Restoring wildcards
+        for (int e = low; e < numberOfExceptions; ++e) {
+            int entryOffset = exceptionsOffset + e * EXCEPTION_ENTRY_SIZE;
+            int position = buffer.getInt(entryOffset);
+            if (position >= to)
+                break;
+            codes[position - from] = buffer.get(entryOffset + 4);
+        }
+
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder()
+                .ensureCapacity(codes.length);
+        for (byte code : codes)
+            builder.append(code);
+        return builder.createAndDestroy();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.util.GlobalObjectMappers;
+import io.repseq.dto.VDJCLibraryData;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BinaryLibraryFormatTest {
+    private static final Logger log = LoggerFactory.getLogger(BinaryLibraryFormatTest.class);
+
+    @Test
+    public void testRoundTrip1() throws Exception {
+        try (InputStream stream = getClass().getResourceAsStream("/testdata/example_0.json")) {
+            VDJCLibraryData[] libs = GlobalObjectMappers.PRETTY.readValue(stream, VDJCLibraryData[].class);
+            Assert.assertArrayEquals(libs, roundTrip(Arrays.asList(libs)));
+        }
+    }
+
+    @Test
+    public void testBaseSequenceRoundTrip() throws Exception {
+        BaseSequence[] sequences = {
+                new BaseSequence("nuccore://A1"),
+                new BaseSequence(URI.create("nuccore://A1"), new Range[]{new Range(10, 30), new Range(50, 40)}, null),
+                new BaseSequence(URI.create("nuccore://A1"), new Range[]{new Range(10, 30)},
+                        Mutations.decode("SA3T", NucleotideSequence.ALPHABET))
+        };
+        for (BaseSequence sequence : sequences) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            BinaryLibraryFormat.writeBaseSequence(sequence, new DataOutputStream(bos));
+            BaseSequence read = BinaryLibraryFormat.readBaseSequence(ByteBuffer.wrap(bos.toByteArray()));
+            Assert.assertEquals(sequence, read);
+            Assert.assertEquals(sequence.isPureOriginalSequence(), read.isPureOriginalSequence());
+        }
+    }
+
+    @Test
+    public void testRoundTripDefaultLibrary() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        VDJCLibraryData[] libs = {library.getData()};
+        Assert.assertArrayEquals(libs, roundTrip(Arrays.asList(libs)));
+    }
+
+    @Test
+    public void testRegisterFromFile() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        Path dir = Files.createTempDirectory("binlib");
+        Path file = dir.resolve("test_lib" + BinaryLibraryFormat.EXTENSION);
+        try {
+            List<VDJCLibraryData> libs = new ArrayList<>();
+            libs.add(library.getData());
+            BinaryLibraryFormat.writeToFile(libs, file);
+
+            VDJCLibraryRegistry registry = new VDJCLibraryRegistry();
+            registry.addPathResolver(dir);
+            VDJCLibrary loaded = registry.getLibrary("test_lib", "hs");
+            Assert.assertEquals(library.getGenes().size(), loaded.getGenes().size());
+            Assert.assertArrayEquals(library.getChecksum(), loaded.getChecksum());
+            VDJCGene gene = loaded.getSafe("TRBV12-3*00");
+            Assert.assertEquals(library.getSafe("TRBV12-3*00").getFeature(GeneFeature.VRegion),
+                    gene.getFeature(GeneFeature.VRegion));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void loadTimeBenchmark() throws Exception {
+        VDJCLibraryRegistry registry = VDJCLibraryRegistry.createDefaultRegistry();
+        registry.loadAllLibraries("default");
+        List<VDJCLibraryData> libs = new ArrayList<>();
+        for (VDJCLibrary library : registry.getLoadedLibraries())
+            libs.add(library.getData());
+
+        Path jsonFile = Files.createTempFile("lib", ".json");
+        Path binFile = Files.createTempFile("lib", BinaryLibraryFormat.EXTENSION);
+        try {
+            GlobalObjectMappers.ONE_LINE.writeValue(jsonFile.toFile(), libs);
+            BinaryLibraryFormat.writeToFile(libs, binFile);
+            log.info("JSON size: {}; binary size: {}", Files.size(jsonFile), Files.size(binFile));
+
+            for (int i = 0; i < 10; i++) {
+                long start = System.nanoTime();
+                GlobalObjectMappers.ONE_LINE.readValue(jsonFile.toFile(), VDJCLibraryData[].class);
+                long json = System.nanoTime() - start;
+                start = System.nanoTime();
+                BinaryLibraryFormat.readFromFile(binFile);
+                long bin = System.nanoTime() - start;
+                log.info("JSON: {}ms; binary: {}ms", json / 1000_000, bin / 1000_000);
+            }
+        } finally {
+            Files.deleteIfExists(jsonFile);
+            Files.deleteIfExists(binFile);
+        }
+    }
+
+    private static VDJCLibraryData[] roundTrip(List<VDJCLibraryData> libs) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryLibraryFormat.write(libs, new DataOutputStream(bos));
+        return BinaryLibraryFormat.read(ByteBuffer.wrap(bos.toByteArray()));
+    }
+}
@@ -16,9 +16,14 @@
 package io.repseq.core;
 
 import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.GlobalObjectMappers;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 public class ChainsTest {
     @Test
     public void serializationDeserialization1() throws Exception {
@@ -41,5 +46,60 @@ public class ChainsTest {
     @Test
     public void testParse() throws Exception {
         Assert.assertEquals(Chains.parse("IG, TRB"), Chains.IG.merge(Chains.TRB));
+        Assert.assertSame(Chains.TRB, Chains.parse("TRB"));
+        Assert.assertSame(Chains.IG, Chains.parse("IG"));
+        Assert.assertSame(Chains.TCR, Chains.parse("TRA,TRB,TRG,TRD"));
+        Assert.assertSame(Chains.ALL, Chains.parse("TRB,ALL"));
+    }
+
+    @Test
+    public void testInterning() throws Exception {
+        Assert.assertSame(Chains.TRB, Chains.of("TRB"));
+        Assert.assertSame(Chains.IGKL, Chains.of("IGL", "IGK"));
+        Assert.assertSame(Chains.EMPTY, Chains.of());
+        Assert.assertSame(Chains.of("XYZ"), Chains.of("XYZ"));
+        Assert.assertEquals(new Chains("TRB"), Chains.TRB);
+        Assert.assertSame(Chains.TRB, Chains.TCR.intersection(Chains.TRB));
+        Assert.assertSame(Chains.TRAD, Chains.TRA.merge(Chains.TRD));
+        Assert.assertSame(Chains.EMPTY, Chains.TRA.intersection(Chains.IGH));
+    }
+
+    @Test
+    public void testSetOperations() throws Exception {
+        Chains c = new Chains("TRB", "XYZ");
+        Assert.assertTrue(c.contains("XYZ"));
+        Assert.assertTrue(c.contains("TRB"));
+        Assert.assertFalse(c.contains("TRA"));
+        Assert.assertFalse(c.contains("Unknown"));
+        Assert.assertTrue(c.intersects(Chains.TCR));
+        Assert.assertFalse(c.intersects(Chains.IG));
+        Assert.assertTrue(c.contains(Chains.TRB));
+        Assert.assertFalse(c.contains(Chains.TCR));
+        Assert.assertTrue(Chains.ALL.contains(c));
+        Assert.assertFalse(c.contains(Chains.ALL));
+        Assert.assertTrue(c.contains(Chains.EMPTY));
+        Assert.assertEquals(new Chains("TRB", "XYZ", "IGH"), c.merge(Chains.IGH));
+        Assert.assertEquals(Chains.TRB, c.intersection(Chains.TCR));
+        Assert.assertEquals("TRB,XYZ", c.toString());
+        Assert.assertEquals("ALL", Chains.ALL.toString());
+        Assert.assertEquals("", Chains.EMPTY.toString());
+        Assert.assertTrue(Chains.EMPTY.isEmpty());
+        Assert.assertFalse(Chains.ALL.isEmpty());
+
+        Set<String> names = new HashSet<>();
+        for (String s : c)
+            names.add(s);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("TRB", "XYZ")), names);
+        Assert.assertEquals(c, new Chains(names));
+        Assert.assertEquals(c.hashCode(), new Chains(names).hashCode());
+    }
+
+    @Test
+    public void serializationDeserialization2() throws Exception {
+        Chains c = new Chains("TRB", "XYZ");
+        TestUtil.assertJson(c);
+        Assert.assertEquals("[\"TRB\"]", GlobalObjectMappers.ONE_LINE.writeValueAsString(Chains.TRB)
+                .replaceAll("\\s", ""));
+        Assert.assertSame(Chains.TRB, GlobalObjectMappers.ONE_LINE.readValue("[\"TRB\"]", Chains.class));
     }
 }
\ No newline at end of file
@@ -69,6 +69,25 @@ public class GeneFeatureTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testInternAndParseCache() throws Exception {
+        assertSame(CDR3, GeneFeature.parse("CDR3"));
+        assertSame(CDR3, GeneFeature.parse("CDR3"));
+        assertSame(CDR3, GeneFeature.intern(new GeneFeature(ReferencePoint.CDR3Begin, ReferencePoint.CDR3End)));
+
+        GeneFeature f = GeneFeature.parse("CDR3(-3,+2)");
+        assertEquals(new GeneFeature(CDR3, -3, 2), f);
+        assertSame(f, GeneFeature.parse("CDR3(-3,+2)"));
+        assertSame(f, GeneFeature.parse("CDR3(-3, +2)"));
+        assertSame(f, GeneFeature.intern(new GeneFeature(CDR3, -3, 2)));
+        assertEquals(new GeneFeature(CDR3, -3, 2).hashCode(), f.hashCode());
+        assertNotEquals(f, CDR3);
+        assertNull(GeneFeature.parse("null"));
+        assertTrue(GeneFeature.getParseCacheStats().hits > 0);
+
+        assertSame(ReferencePoint.parse("CDR3Begin(-3)"), ReferencePoint.parse("CDR3Begin(-3)"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void test2() throws Exception {
         GeneFeature f1 = create(1, 5),
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class PartitionedSequenceCachedTest {
+    private static final Logger log = LoggerFactory.getLogger(PartitionedSequenceCachedTest.class);
+
+    @Test
+    public void testSameReferenceConcurrent() throws Exception {
+        final VDJCGene gene = VDJCLibraryRegistry.getDefaultLibrary("hs").getSafe("TRBV12-3*00");
+        final SequenceProviderAndReferencePoints sp = gene.getSPAndRPs();
+        final GeneFeature[] features = {GeneFeature.FR3, GeneFeature.CDR1, GeneFeature.VRegion,
+                GeneFeature.GermlineVCDR3Part, GeneFeature.JRegion};
+
+        int nThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            final CyclicBarrier barrier = new CyclicBarrier(nThreads);
+            List<Future<NucleotideSequence[]>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads; ++i)
+                futures.add(executor.submit(new Callable<NucleotideSequence[]>() {
+                    @Override
+                    public NucleotideSequence[] call() throws Exception {
+                        barrier.await();
+                        NucleotideSequence[] result = new NucleotideSequence[features.length];
+                        for (int j = 0; j < features.length; ++j)
+                            result[j] = sp.getFeature(features[j]);
+                        return result;
+                    }
+                }));
+
+            NucleotideSequence[] expected = futures.get(0).get();
+            for (Future<NucleotideSequence[]> future : futures) {
+                NucleotideSequence[] actual = future.get();
+                for (int j = 0; j < features.length; ++j) {
+                    Assert.assertSame(expected[j], actual[j]);
+                    Assert.assertSame(expected[j], sp.getFeature(features[j]));
+                }
+            }
+            Assert.assertNull(expected[4]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Ignore
+    @Test
+    public void contentionBenchmark() throws Exception {
+        final VDJCGene gene = VDJCLibraryRegistry.getDefaultLibrary("hs").getSafe("TRBV12-3*00");
+        gene.getFeature(GeneFeature.FR3);
+        final int iterations = 10_000_000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int nThreads = 1; nThreads <= maxThreads; nThreads *= 2) {
+            ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+            List<Future<Long>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < nThreads; ++i)
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        long sum = 0;
+                        for (int j = 0; j < iterations; ++j)
+                            sum += gene.getFeature(GeneFeature.FR3).size();
+                        return sum;
+                    }
+                }));
+            // Sum of results is consumed to prevent elimination of the benchmarked calls
+            long sum = 0;
+            for (Future<Long> future : futures)
+                sum += future.get();
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+            log.info("Threads: {}; ops/s: {} (checksum {})", nThreads,
+                    1_000_000_000L * nThreads * iterations / elapsed, sum);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.AminoAcidAlphabet;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionedSequenceTest {
+    @Test
+    public void testFeatureCodes() throws Exception {
+        final VDJCGene gene = VDJCLibraryRegistry.getDefaultLibrary("hs").getSafe("TRBV12-3*00");
+        // Non-cached view of the same gene
+        PartitionedSequence<NucleotideSequence> plain = new PartitionedSequence<NucleotideSequence>() {
+            @Override
+            protected NucleotideSequence getSequence(Range range) {
+                return gene.getSPAndRPs().sequenceProvider.getRegion(range);
+            }
+
+            @Override
+            protected SequencePartitioning getPartitioning() {
+                return gene.getPartitioning();
+            }
+        };
+
+        GeneFeature[] features = {GeneFeature.FR3, GeneFeature.CDR1, GeneFeature.VRegion,
+                GeneFeature.parse("CDR1+CDR2"), GeneFeature.JRegion};
+        byte[] buffer = new byte[1024];
+        for (PartitionedSequence<NucleotideSequence> ps : new PartitionedSequence[]{plain, gene})
+            for (GeneFeature feature : features) {
+                NucleotideSequence expected = gene.getFeature(feature);
+                int length = ps.getFeatureCodes(feature, buffer, 3);
+                if (expected == null) {
+                    Assert.assertEquals(-1, length);
+                    continue;
+                }
+                Assert.assertEquals(expected.size(), length);
+                for (int i = 0; i < length; ++i)
+                    Assert.assertEquals(expected.codeAt(i), buffer[3 + i]);
+            }
+
+        int[] bounds = new int[2];
+        int length = gene.getPartitioning().getBounds(GeneFeature.FR3, bounds);
+        Assert.assertEquals(gene.getPartitioning().getRange(GeneFeature.FR3), new Range(bounds[0], bounds[1]));
+        Assert.assertEquals(gene.getFeature(GeneFeature.FR3).size(), length);
+        Assert.assertEquals(-1, gene.getPartitioning().getBounds(GeneFeature.JRegion, bounds));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSmallBuffer() throws Exception {
+        VDJCGene gene = VDJCLibraryRegistry.getDefaultLibrary("hs").getSafe("TRBV12-3*00");
+        gene.getFeatureCodes(GeneFeature.VRegion, new byte[10], 0);
+    }
+
+    @Test
+    public void testAAFeature() throws Exception {
+        VDJCGene gene = VDJCLibraryRegistry.getDefaultLibrary("hs").getSafe("TRBV12-3*00");
+        for (GeneFeature feature : new GeneFeature[]{GeneFeature.FR3, GeneFeature.CDR1, GeneFeature.VRegion}) {
+            AminoAcidSequence aa = gene.getAAFeature(feature);
+            Assert.assertEquals(AminoAcidSequence.translate(gene.getFeature(feature),
+                    gene.getPartitioning().getTranslationParameters(feature)), aa);
+            Assert.assertSame(aa, gene.getAAFeature(feature));
+        }
+        // Not available
+        Assert.assertNull(gene.getAAFeature(GeneFeature.JRegion));
+        Assert.assertNull(gene.getAAFeature(GeneFeature.JRegion));
+        // Nucleotide and amino acid features don't interfere in the cache
+        Assert.assertNotNull(gene.getFeature(GeneFeature.CDR1));
+        Assert.assertEquals(AminoAcidAlphabet.C,
+                gene.getAAFeature(new GeneFeature(ReferencePoint.CDR3Begin, 0, 3)).codeAt(0));
+    }
+}
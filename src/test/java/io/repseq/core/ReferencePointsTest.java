@@ -194,4 +194,70 @@ public class ReferencePointsTest {
                 "}]";
         GlobalObjectMappers.ONE_LINE.readValue(str, ReferencePoints[].class);
     }
-}
\ No newline at end of file
+    @Test
+    public void testFeatureRangeTable() throws Exception {
+        for (VDJCGene gene : VDJCLibraryRegistry.getDefaultLibrary("hs").getGenes()) {
+            ReferencePoints withTable = gene.getPartitioning();
+            Assert.assertNotNull(withTable.getFeatureRangeTable());
+            ReferencePoints plain = new ReferencePoints(withTable.points.clone());
+            Assert.assertNull(plain.getFeatureRangeTable());
+
+            for (GeneFeature feature : GeneFeature.getFeaturesByName().values()) {
+                Assert.assertEquals(plain.getLength(feature), withTable.getLength(feature));
+                Assert.assertEquals(plain.isAvailable(feature), withTable.isAvailable(feature));
+                if (!feature.isComposite())
+                    Assert.assertEquals(plain.getRange(feature), withTable.getRange(feature));
+                Range[] expected;
+                try {
+                    expected = plain.getRanges(feature);
+                } catch (IllegalArgumentException e) {
+                    expected = null;
+                    try {
+                        withTable.getRanges(feature);
+                        Assert.fail();
+                    } catch (IllegalArgumentException ok) {
+                        continue;
+                    }
+                }
+                Assert.assertArrayEquals(expected, withTable.getRanges(feature));
+            }
+
+            // Features with offsets are calculated using general path
+            GeneFeature withOffset = new GeneFeature(GeneFeature.CDR3, -3, 2);
+            Assert.assertEquals(plain.getLength(withOffset), withTable.getLength(withOffset));
+        }
+    }
+
+    @Test
+    public void testView() throws Exception {
+        ReferencePoints points = new ReferencePoints(0, new int[]{2, 52, 63, 84, 155, 455, 645, 1255, 2142});
+        ReferencePointsView view = points.view().move(10).without(ReferencePoint.CDR1Begin).move(-3);
+        ReferencePoints expected = points.move(7).without(ReferencePoint.CDR1Begin);
+        for (int i = 0; i < BasicReferencePoint.TOTAL_NUMBER_OF_BASIC_REFERENCE_POINTS; ++i) {
+            ReferencePoint point = new ReferencePoint(BasicReferencePoint.getByIndex(i));
+            Assert.assertEquals(expected.getPosition(point), view.getPosition(point));
+        }
+
+        ExtendedReferencePointsBuilder fromView = new ExtendedReferencePointsBuilder();
+        fromView.setPositionsFrom(view);
+        ExtendedReferencePointsBuilder fromPoints = new ExtendedReferencePointsBuilder();
+        fromPoints.setPositionsFrom(expected);
+        Assert.assertArrayEquals(fromPoints.build().points, fromView.build().points);
+    }
+
+    @Test
+    public void testViewRollback() throws Exception {
+        ExtendedReferencePointsBuilder builder = new ExtendedReferencePointsBuilder();
+        builder.setPosition(ReferencePoint.CDR3Begin, 100);
+        ReferencePoints points = new ReferencePoints(0, new int[]{2, 52, 63, 84, 155, 455, 645, 1255, 2142});
+        try {
+            // FR3Begin of the view is after CDR3Begin already set in the builder
+            builder.setPositionsFrom(points.view());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+        int[] expected = new ExtendedReferencePointsBuilder().build().points;
+        expected[ReferencePoint.CDR3Begin.getExtendedIndex()] = 100;
+        Assert.assertArrayEquals(expected, builder.build().points);
+    }
+}
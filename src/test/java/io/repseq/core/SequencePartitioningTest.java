@@ -161,4 +161,22 @@ public class SequencePartitioningTest {
 
         assertEquals(expected, translationParameters);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTranslationParametersMemo() throws Exception {
+        GeneFeature[] features = {GeneFeature.CDR1, GeneFeature.FR3, GeneFeature.VRegion, GeneFeature.V5UTR,
+                new GeneFeature(GeneFeature.FR3, 1, 0)};
+        for (VDJCGene gene : VDJCLibraryRegistry.getDefaultLibrary("hs").getGenes(Chains.TRB)) {
+            ReferencePoints memoized = gene.getPartitioning();
+            ReferencePoints plain = new ReferencePoints(memoized.points.clone());
+            for (GeneFeature feature : features) {
+                if (!plain.isAvailable(feature))
+                    continue;
+                Assert.assertEquals(plain.getTranslationParameters(feature), memoized.getTranslationParameters(feature));
+                Assert.assertSame(memoized.getTranslationParameters(feature), memoized.getTranslationParameters(feature));
+            }
+            Assert.assertEquals(plain.getTranslationParameters(1000), memoized.getTranslationParameters(1000));
+            Assert.assertSame(memoized.getTranslationParameters(1000), memoized.getTranslationParameters(1000));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.CachedSequenceProvider;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+import com.milaboratory.core.sequence.provider.SequenceProviderFactory;
+import com.milaboratory.core.sequence.provider.SequenceProviderUtils;
+import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.VDJCGeneData;
+import io.repseq.dto.VDJCLibraryData;
+import io.repseq.seqbase.SequenceAddress;
+import io.repseq.seqbase.SequenceResolver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SequencePrefetcherTest {
+    @Test
+    public void testCollectAddresses() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        VDJCLibraryData data = library.getData();
+
+        // All sequences of compiled library are known
+        Assert.assertTrue(SequencePrefetcher.collectAddresses(library.getContext(), data).isEmpty());
+
+        Set<SequenceAddress> expected = new HashSet<>();
+        for (VDJCGeneData gene : data.getGenes())
+            expected.add(new SequenceAddress(library.getContext(), gene.getBaseSequence().getOrigin()));
+        VDJCLibraryData withoutFragments = new VDJCLibraryData(data.getTaxonId(), data.getSpeciesNames(),
+                data.getGenes(), data.getMeta(), Collections.<KnownSequenceFragmentData>emptyList());
+        Assert.assertEquals(expected, SequencePrefetcher.collectAddresses(library.getContext(), withoutFragments));
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        final AtomicInteger active = new AtomicInteger(), maxActive = new AtomicInteger();
+        final Set<SequenceAddress> initialized = Collections.newSetFromMap(
+                new ConcurrentHashMap<SequenceAddress, Boolean>());
+        SequenceResolver resolver = new SequenceResolver() {
+            final ConcurrentHashMap<SequenceAddress, CachedSequenceProvider<NucleotideSequence>> providers =
+                    new ConcurrentHashMap<>();
+
+            @Override
+            public CachedSequenceProvider<NucleotideSequence> resolve(final SequenceAddress address) {
+                CachedSequenceProvider<NucleotideSequence> provider = providers.get(address);
+                if (provider != null)
+                    return provider;
+                provider = new CachedSequenceProvider<>(NucleotideSequence.ALPHABET,
+                        SequenceProviderUtils.lazyProvider(new SequenceProviderFactory<NucleotideSequence>() {
+                            @Override
+                            public SequenceProvider<NucleotideSequence> create() {
+                                if (address.getUri().getAuthority().equals("broken"))
+                                    throw new IllegalStateException("broken");
+                                int current = active.incrementAndGet();
+                                synchronized (maxActive) {
+                                    maxActive.set(Math.max(maxActive.get(), current));
+                                }
+                                try {
+                                    Thread.sleep(50);
+                                } catch (InterruptedException e) {
+                                    throw new RuntimeException(e);
+                                }
+                                active.decrementAndGet();
+                                initialized.add(address);
+                                return SequenceProviderUtils.fromSequence(new NucleotideSequence("ACGT"));
+                            }
+                        }));
+                CachedSequenceProvider<NucleotideSequence> existing = providers.putIfAbsent(address, provider);
+                return existing == null ? provider : existing;
+            }
+        };
+
+        List<SequenceAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < 16; ++i)
+            addresses.add(new SequenceAddress(URI.create("test://record" + i)));
+        SequenceAddress broken = new SequenceAddress(URI.create("test://broken"));
+        addresses.add(broken);
+
+        final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+        Map<SequenceAddress, Throwable> errors = SequencePrefetcher.prefetch(resolver, addresses, 4,
+                new SequencePrefetcher.Listener() {
+                    @Override
+                    public void prefetched(SequenceAddress address, Throwable error, int done, int total) {
+                        Assert.assertEquals(17, total);
+                        progress.add(done);
+                    }
+                });
+
+        Assert.assertEquals(Collections.singleton(broken), errors.keySet());
+        Assert.assertEquals(16, initialized.size());
+        Assert.assertEquals(17, progress.size());
+        Assert.assertEquals(17, (int) Collections.max(progress));
+        Assert.assertTrue(maxActive.get() > 1);
+        Assert.assertTrue(maxActive.get() <= 4);
+    }
+}
@@ -26,4 +26,20 @@ public class SequenceProviderAndReferencePointsTest {
         assertEquals(gene.getFeature(GeneFeature.FR3), gene.getSPAndRPs().getFeature(GeneFeature.FR3));
         assertEquals(gene.getFeature(GeneFeature.FR3), gene.getSPAndRPs().reverse().getFeature(GeneFeature.FR3));
     }
+
+    @Test
+    public void testCachedViews() throws Exception {
+        VDJCGene gene = VDJCLibraryRegistry.getDefaultLibrary("hs").getSafe("TRBV12-3*00");
+        SequenceProviderAndReferencePoints sp = gene.getSPAndRPs();
+        assertSame(sp, gene.getSPAndRPs());
+        assertSame(sp.nonReversedView(), gene.getNonReversedSPAndRPs());
+        SequenceProviderAndReferencePoints reversed = sp.reverse();
+        assertSame(reversed, sp.reverse());
+        assertSame(sp, reversed.reverse());
+        assertSame(reversed.nonReversedView(), sp.nonReversedView());
+        assertFalse(gene.getNonReversedSPAndRPs().referencePoints.isReversed());
+        // Feature cache of the shared view stays warm
+        assertSame(gene.getNonReversedSPAndRPs().getFeature(GeneFeature.FR3),
+                gene.getNonReversedSPAndRPs().getFeature(GeneFeature.FR3));
+    }
 }
\ No newline at end of file
@@ -68,4 +68,21 @@ public class VDJCGeneTest {
 
         assertTrue(geneDeserialized == gene);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIdAndOrdinal() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry
+                .getDefaultLibrary("hs");
+        VDJCGene gene = library
+                .getSafe("TRBV12-3*00");
+
+        assertSame(gene.getId(), gene.getId());
+        assertEquals(new VDJCGeneId(library.getLibraryId(), gene.getName()), gene.getId());
+        assertEquals(gene.getId().hashCode(), gene.hashCode());
+
+        assertSame(gene, library.getGene(gene.getOrdinal()));
+        for (int i = 0; i < library.getGeneCount(); i++)
+            assertEquals(i, library.getGene(i).getOrdinal());
+        assertEquals(library.getGenes().size(), library.getGeneCount());
+    }
+}
@@ -15,22 +15,230 @@
  */
 package io.repseq.core;
 
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.util.GlobalObjectMappers;
+import io.repseq.dto.KnownSequenceFragmentData;
+import io.repseq.dto.KnownVDJCLibraryMetaFields;
+import io.repseq.dto.VDJCLibraryData;
+import io.repseq.seqbase.AnySequenceResolver;
+import org.apache.commons.codec.binary.Hex;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.reflections.Reflections;
 import org.reflections.scanners.ResourcesScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.*;
 import java.util.regex.Pattern;
 
 public class VDJCLibraryRegistryTest {
+    private static final Logger log = LoggerFactory.getLogger(VDJCLibraryRegistryTest.class);
+
     @Test
     public void testLibraryName() throws Exception {
         Assert.assertEquals("imgt.201631-4.sv1", VDJCLibraryRegistry.libraryNameFromFileName("imgt.201631-4.sv1.json.gz"));
         Assert.assertEquals("imgt.201631-4.sv1", VDJCLibraryRegistry.libraryNameFromFileName("imgt.201631-4.sv1.json"));
     }
 
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        final VDJCLibraryRegistry registry = VDJCLibraryRegistry.createDefaultRegistry();
+        int nThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            final CyclicBarrier barrier = new CyclicBarrier(nThreads);
+            List<Future<VDJCLibrary>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads; ++i)
+                futures.add(executor.submit(new Callable<VDJCLibrary>() {
+                    @Override
+                    public VDJCLibrary call() throws Exception {
+                        barrier.await();
+                        return registry.getLibrary("default", "hs");
+                    }
+                }));
+            VDJCLibrary library = futures.get(0).get();
+            for (Future<VDJCLibrary> future : futures)
+                Assert.assertSame(library, future.get());
+            Assert.assertSame(library, registry.getLibrary(library.getLibraryId()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDefaultLibraryStoredChecksum() throws Exception {
+        VDJCLibraryRegistry lazyRegistry = VDJCLibraryRegistry.createDefaultRegistry();
+        lazyRegistry.setLazyLibraries(true);
+        VDJCLibrary library = lazyRegistry.getLibrary("default", "hs");
+        String stored = library.getData().getMetaValue(KnownVDJCLibraryMetaFields.CHECKSUM);
+        Assert.assertNotNull(stored);
+
+        // Stored checksum is used, so genes are not materialized to calculate it
+        Assert.assertEquals(stored, Hex.encodeHexString(library.getChecksum()));
+        Assert.assertFalse(library.isMaterialized());
+        Assert.assertEquals(stored, Hex.encodeHexString(VDJCLibrary.calculateChecksum(library.getGenes())));
+    }
+
+    @Test
+    public void testLazyLibrary() throws Exception {
+        VDJCLibraryRegistry lazyRegistry = VDJCLibraryRegistry.createDefaultRegistry();
+        lazyRegistry.setLazyLibraries(true);
+        VDJCLibrary lazy = lazyRegistry.getLibrary("default", "hs");
+        Assert.assertFalse(lazy.isMaterialized());
+
+        VDJCLibrary eager = VDJCLibraryRegistry.createDefaultRegistry().getLibrary("default", "hs");
+        Assert.assertTrue(eager.isMaterialized());
+        Assert.assertEquals(eager.getGeneCount(), lazy.getGeneCount());
+
+        VDJCGene lazyGene = lazy.getSafe("TRBV12-3*00");
+        VDJCGene eagerGene = eager.getSafe("TRBV12-3*00");
+        Assert.assertSame(lazyGene, lazy.get("TRBV12-3*00"));
+        Assert.assertSame(lazyGene, lazy.getGene(lazyGene.getOrdinal()));
+        Assert.assertEquals(eagerGene.getOrdinal(), lazyGene.getOrdinal());
+        Assert.assertEquals(eagerGene.getFeature(GeneFeature.VRegion), lazyGene.getFeature(GeneFeature.VRegion));
+        Assert.assertNull(lazy.get("NoSuchGene"));
+        Assert.assertFalse(lazy.isMaterialized());
+
+        Assert.assertEquals(eager.getGenes().size(), lazy.getGenes().size());
+        Assert.assertTrue(lazy.isMaterialized());
+        for (VDJCGene gene : lazy.getGenes())
+            Assert.assertEquals(eager.getSafe(gene.getName()).getFeature(GeneFeature.CDR3),
+                    gene.getFeature(GeneFeature.CDR3));
+        Assert.assertArrayEquals(eager.getChecksum(), lazy.getChecksum());
+    }
+
+    @Test
+    public void testFragmentDeduplication() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        VDJCLibraryData data = library.getData();
+
+        // Same library data with new sequence instances
+        List<KnownSequenceFragmentData> copies = new ArrayList<>();
+        long size = 0;
+        for (KnownSequenceFragmentData fragment : data.getSequenceFragments()) {
+            copies.add(new KnownSequenceFragmentData(fragment.getUri(), fragment.getRange(),
+                    new NucleotideSequence(fragment.getSequence().toString())));
+            size += fragment.getSequence().size();
+        }
+        VDJCLibraryData copy = new VDJCLibraryData(data.getTaxonId(), data.getSpeciesNames(), data.getGenes(),
+                data.getMeta(), copies);
+
+        VDJCLibraryRegistry registry = new VDJCLibraryRegistry();
+        VDJCLibrary first = registry.registerLibrary(library.getContext(), "first", data);
+        SequenceFragmentStore.Report before = registry.getFragmentStore().getReport();
+        VDJCLibrary second = registry.registerLibrary(library.getContext(), "second", copy);
+
+        List<KnownSequenceFragmentData> firstFragments = first.getData().getSequenceFragments(),
+                secondFragments = second.getData().getSequenceFragments();
+        Assert.assertEquals(firstFragments, secondFragments);
+        for (int i = 0; i < firstFragments.size(); ++i)
+            Assert.assertSame(firstFragments.get(i).getSequence(), secondFragments.get(i).getSequence());
+
+        // All fragments of the second library are already in the store
+        SequenceFragmentStore.Report after = registry.getFragmentStore().getReport();
+        Assert.assertEquals(2 * firstFragments.size(), after.fragments);
+        Assert.assertEquals(before.uniqueFragments, after.uniqueFragments);
+        Assert.assertEquals(size, after.savedBytes() - before.savedBytes());
+        Assert.assertEquals(second.getSafe("TRBV12-3*00").getFeature(GeneFeature.VRegion),
+                first.getSafe("TRBV12-3*00").getFeature(GeneFeature.VRegion));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        VDJCLibraryRegistry source = VDJCLibraryRegistry.createDefaultRegistry();
+        VDJCLibrary library = source.getLibrary("default", "hs");
+        Path snapshot = Files.createTempFile("registry", ".snapshot");
+        try {
+            source.writeSnapshot(snapshot);
+
+            // Restored registry has no library resolvers and no access to external sequences
+            VDJCLibraryRegistry restored = new VDJCLibraryRegistry(new AnySequenceResolver());
+            restored.loadSnapshot(snapshot);
+            VDJCLibrary restoredLibrary = restored.getLibrary("default", "hs");
+            Assert.assertEquals(library.getLibraryId(), restoredLibrary.getLibraryId());
+            Assert.assertEquals(library.getGeneCount(), restoredLibrary.getGeneCount());
+            for (VDJCGene gene : library.getGenes()) {
+                GeneFeature wrapping = gene.getPartitioning().getWrappingGeneFeature();
+                Assert.assertEquals(gene.getFeature(wrapping),
+                        restoredLibrary.getSafe(gene.getName()).getFeature(wrapping));
+            }
+            Assert.assertEquals(source.getSpeciesNames(library.getTaxonId()),
+                    restored.getSpeciesNames(library.getTaxonId()));
+
+            // Already loaded libraries are skipped
+            restored.loadSnapshot(snapshot);
+            Assert.assertSame(restoredLibrary, restored.getLibrary("default", "hs"));
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void snapshotBenchmark() throws Exception {
+        VDJCLibraryRegistry source = VDJCLibraryRegistry.createDefaultRegistry();
+        source.loadAllLibraries("default");
+        Path snapshot = Files.createTempFile("registry", ".snapshot");
+        try {
+            source.writeSnapshot(snapshot);
+            for (int i = 0; i < 5; ++i) {
+                long start = System.nanoTime();
+                VDJCLibraryRegistry.createDefaultRegistry().loadAllLibraries("default");
+                long coldStart = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                new VDJCLibraryRegistry().loadSnapshot(snapshot);
+                long snapshotStart = System.nanoTime() - start;
+
+                log.info("loadAllLibraries: {}ms; snapshot: {}ms", coldStart / 1_000_000,
+                        snapshotStart / 1_000_000);
+            }
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Ignore
+    @Test
+    public void concurrentJsonDecodeBenchmark() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        List<String> encoded = new ArrayList<>();
+        for (VDJCGene gene : library.getGenes())
+            encoded.add(GlobalObjectMappers.ONE_LINE.writeValueAsString(gene));
+        final String[] genes = encoded.toArray(new String[encoded.size()]);
+        final ObjectReader reader = GlobalObjectMappers.ONE_LINE.readerFor(VDJCGene.class);
+        final int iterations = 200_000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int nThreads = 1; nThreads <= maxThreads; nThreads *= 2) {
+            ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < nThreads; ++i)
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < iterations; ++j)
+                            reader.readValue(genes[j % genes.length]);
+                        return null;
+                    }
+                }));
+            for (Future<?> future : futures)
+                future.get();
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+            log.info("Threads: {}; genes decoded per second: {}", nThreads,
+                    1_000_000_000L * nThreads * iterations / elapsed);
+        }
+    }
+
     @Ignore
     @Test
     public void name() throws Exception {
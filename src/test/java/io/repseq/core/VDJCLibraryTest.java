@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.core;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import io.repseq.dto.KnownVDJCLibraryMetaFields;
+import io.repseq.dto.VDJCGeneData;
+import io.repseq.dto.VDJCLibraryData;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.function.Predicate;
+
+public class VDJCLibraryTest {
+    private static final Logger log = LoggerFactory.getLogger(VDJCLibraryTest.class);
+
+    @Test
+    public void testGeneIndexes() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        Chains[] queries = {Chains.TRB, Chains.TRA, Chains.TCR, Chains.IGKL, Chains.ALL, Chains.parse("TRB,IGH")};
+        for (Chains chains : queries) {
+            Assert.assertEquals(scan(library, chains, null), new ArrayList<>(library.getGenes(chains)));
+            Assert.assertSame(library.getGenes(chains), library.getGenes(chains));
+            for (GeneType geneType : GeneType.values())
+                Assert.assertEquals(scan(library, chains, geneType),
+                        new ArrayList<>(library.getGenes(chains, geneType)));
+        }
+        for (GeneType geneType : GeneType.values())
+            Assert.assertEquals(scan(library, null, geneType), new ArrayList<>(library.getGenes(geneType)));
+        Assert.assertFalse(library.getGenes(Chains.TRB, GeneType.Variable).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGeneIndexesImmutable() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        library.getGenes(Chains.TRB).clear();
+    }
+
+    @Test
+    public void testStreamingChecksum() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        List<VDJCGene> genes = new ArrayList<>(library.getGenes());
+        Collections.sort(genes, new Comparator<VDJCGene>() {
+            @Override
+            public int compare(VDJCGene o1, VDJCGene o2) {
+                return o1.getData().compareTo(o2.getData());
+            }
+        });
+        StringBuilder bigSeqBuilder = new StringBuilder();
+        for (VDJCGene gene : genes)
+            bigSeqBuilder.append(gene.getFeature(gene.getPartitioning().getWrappingGeneFeature()).toString());
+        byte[] expected = MessageDigest.getInstance("MD5").digest(
+                bigSeqBuilder.toString().getBytes(StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(expected, VDJCLibrary.calculateChecksum(library.getGenes()));
+    }
+
+    @Test
+    public void testStoredChecksum() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        byte[] fake = new byte[16];
+        VDJCLibraryData data = library.getData().clone()
+                .setMetaValue(KnownVDJCLibraryMetaFields.CHECKSUM, Hex.encodeHexString(fake));
+
+        VDJCLibraryRegistry registry = new VDJCLibraryRegistry();
+        VDJCLibrary withStored = registry.registerLibrary(library.getContext(), "stored", data);
+        Assert.assertArrayEquals(fake, withStored.getChecksum());
+
+        VDJCLibraryRegistry verifyingRegistry = new VDJCLibraryRegistry();
+        verifyingRegistry.setVerifyChecksums(true);
+        VDJCLibrary verified = verifyingRegistry.registerLibrary(library.getContext(), "stored", data);
+        try {
+            verified.getChecksum();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("differs"));
+        }
+
+        // Stored checksum is dropped when gene list changes
+        Assert.assertNull(new VDJCLibraryData(data, new ArrayList<VDJCGeneData>())
+                .getMetaValue(KnownVDJCLibraryMetaFields.CHECKSUM));
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        FeatureBatch batch = library.extract(GeneFeature.CDR1, new Predicate<VDJCGene>() {
+            @Override
+            public boolean test(VDJCGene gene) {
+                return gene.getChains().intersects(Chains.TRB);
+            }
+        }, true);
+
+        int expectedSize = 0;
+        for (VDJCGene gene : library.getGenes(Chains.TRB))
+            if (gene.getFeature(GeneFeature.CDR1) != null)
+                ++expectedSize;
+        Assert.assertEquals(expectedSize, batch.size());
+        Assert.assertTrue(batch.size() > 0);
+
+        for (int i = 0; i < batch.size(); ++i) {
+            VDJCGene gene = batch.getGene(i);
+            NucleotideSequence expected = gene.getFeature(GeneFeature.CDR1);
+            Assert.assertEquals(expected, batch.getSequence(i));
+            Assert.assertEquals(expected.size(), batch.getLength(i));
+            Assert.assertEquals(AminoAcidSequence.translate(expected,
+                    gene.getPartitioning().getTranslationParameters(GeneFeature.CDR1)), batch.getAASequence(i));
+            if (i > 0)
+                Assert.assertTrue(batch.getOrdinal(i - 1) < batch.getOrdinal(i));
+        }
+    }
+
+    private static List<VDJCGene> scan(VDJCLibrary library, Chains chains, GeneType geneType) {
+        List<VDJCGene> result = new ArrayList<>();
+        for (VDJCGene gene : library.getGenes())
+            if ((chains == null || gene.getChains().intersects(chains))
+                    && (geneType == null || gene.getGeneType() == geneType))
+                result.add(gene);
+        return result;
+    }
+
+    @Ignore
+    @Test
+    public void geneQueryBenchmark() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry.getDefaultLibrary("hs");
+        int iterations = 1_000_000;
+        for (int k = 0; k < 3; ++k) {
+            long start = System.nanoTime();
+            int sum = 0;
+            for (int i = 0; i < iterations; ++i) {
+                sum += scan(library, Chains.TRB, GeneType.Variable).size();
+            }
+            long scanTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                Collection<VDJCGene> genes = library.getGenes(Chains.TRB, GeneType.Variable);
+                sum += genes.size();
+            }
+            long indexTime = System.nanoTime() - start;
+            log.info("Scan: {}ns; index: {}ns (checksum {})", scanTime / iterations, indexTime / iterations, sum);
+        }
+    }
+}
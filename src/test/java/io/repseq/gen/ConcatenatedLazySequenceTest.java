@@ -67,4 +67,30 @@ public class ConcatenatedLazySequenceTest {
             }
         }
     }
+
+    @Test
+    public void testCopyCodes() throws Exception {
+        Well44497b w = new Well44497b();
+        for (int k = 0; k < 100; k++) {
+            NucleotideSequence sequence = NucleotideSequence.EMPTY;
+            SequenceProvider<NucleotideSequence>[] providers = new SequenceProvider[10];
+            for (int i = 0; i < providers.length; i++) {
+                NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 0, 50);
+                sequence = sequence.concatenate(seq);
+                providers[i] = i % 2 == 0 ? ConcatenatedLazySequence.inMemory(seq) :
+                        SequenceProviderUtils.fromSequence(seq);
+            }
+            ConcatenatedLazySequence<NucleotideSequence> sProvider = new ConcatenatedLazySequence<>(providers);
+            byte[] buffer = new byte[sequence.size() + 2];
+            for (int j = 0; j < 10; j++) {
+                int from = w.nextInt(sequence.size() + 1), to = w.nextInt(sequence.size() + 1);
+                sProvider.copyCodes(from, to, buffer, 2);
+                NucleotideSequence expected = sequence.getRange(Math.min(from, to), Math.max(from, to));
+                if (from > to)
+                    expected = expected.getReverseComplement();
+                for (int i = 0; i < expected.size(); i++)
+                    assertEquals(expected.codeAt(i), buffer[2 + i]);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -47,6 +47,29 @@ public class GGeneTest {
         TestUtil.assertJson(rWithoutD);
     }
 
+    @Test
+    public void testFeatureCodes() throws Exception {
+        VDJCLibrary library = VDJCLibraryRegistry
+                .getDefaultLibrary("hs");
+        VDJCGenes genes = new VDJCGenes(library.getSafe("TRBV12-3*00"), library.getSafe("TRBD1*00"),
+                library.getSafe("TRBJ1-2*00"), library.getSafe("TRBC1*00"));
+        VDJTrimming trimming = new VDJTrimming(-3, 1, 2, -3);
+        NucleotideSequence s0 = new NucleotideSequence("ATAAG"), s1 = new NucleotideSequence("GACAT");
+
+        GeneFeature[] features = {GeneFeature.CDR3, GeneFeature.VDJRegion, GeneFeature.JRegion,
+                GeneFeature.CDR3.append(GeneFeature.FR4).append(GeneFeature.CExon1)};
+        GGene expected = new GGene(null, genes, trimming, s0, s1);
+        byte[] buffer = new byte[4096];
+        for (GeneFeature feature : features) {
+            // Fresh gene, nothing is cached
+            GGene gene = new GGene(null, genes, trimming, s0, s1);
+            NucleotideSequence seq = expected.getFeature(feature);
+            assertEquals(seq.size(), gene.getFeatureCodes(feature, buffer, 1));
+            for (int i = 0; i < seq.size(); ++i)
+                assertEquals(seq.codeAt(i), buffer[1 + i]);
+        }
+    }
+
     @Test
     public void test1() throws Exception {
         VDJCLibrary library = VDJCLibraryRegistry
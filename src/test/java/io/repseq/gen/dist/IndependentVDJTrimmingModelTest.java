@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.gen.dist;
+
+import io.repseq.core.VDJCGene;
+import io.repseq.core.VDJCLibrary;
+import io.repseq.core.VDJCLibraryRegistry;
+import io.repseq.gen.VDJCGenes;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class IndependentVDJTrimmingModelTest {
+    @Test
+    public void testGenesFromOtherLibraryInstance() throws Exception {
+        VDJCLibrary library1 = VDJCLibraryRegistry.createDefaultRegistry().getLibrary("default", "hs");
+        VDJCLibrary library2 = VDJCLibraryRegistry.createDefaultRegistry().getLibrary("default", "hs");
+        Assert.assertNotSame(library1, library2);
+
+        IndependentVDJTrimmingModel model = new IndependentVDJTrimmingModel(
+                new CommonNormalGeneTrimmingModel(0, 1, 0), null,
+                new CommonNormalGeneTrimmingModel(0, 1, 0));
+        VDJTrimmingGenerator generator = model.create(new Well19937c(123),
+                Collections.singletonList(library1.getSafe("TRBV12-3*00")), Collections.<VDJCGene>emptyList(),
+                Collections.singletonList(library1.getSafe("TRBJ1-2*00")), Collections.<VDJCGene>emptyList());
+
+        Assert.assertNotNull(generator.sample(new VDJCGenes(library2.getSafe("TRBV12-3*00"), null,
+                library2.getSafe("TRBJ1-2*00"), null)));
+    }
+}
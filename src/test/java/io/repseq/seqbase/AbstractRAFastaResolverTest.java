@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.seqbase;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.io.sequence.fasta.RandomAccessFastaIndex;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.LongProcessReporter;
+import com.milaboratory.util.TempFileManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AbstractRAFastaResolverTest {
+    static final int FILES = 8, RECORDS = 4;
+
+    @Test
+    public void testConcurrentResolution() throws Exception {
+        final Path dir = TempFileManager.getTempDir().toPath().toAbsolutePath();
+        final NucleotideSequence[][] sequences = writeFiles(dir);
+        final TestResolver resolver = new TestResolver(dir, null);
+
+        int nThreads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            final CyclicBarrier barrier = new CyclicBarrier(nThreads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < nThreads; ++t) {
+                final int seed = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Random random = new Random(seed);
+                        barrier.await();
+                        for (int i = 0; i < 200; ++i) {
+                            int f = random.nextInt(FILES), r = random.nextInt(RECORDS);
+                            NucleotideSequence expected = sequences[f][r];
+                            int from = random.nextInt(expected.size()),
+                                    to = from + random.nextInt(expected.size() - from + 1);
+                            Assert.assertEquals(expected.getRange(from, to),
+                                    resolver.resolve(new SequenceAddress(address(f, r))).getRegion(new Range(from, to)));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        // Each file was opened (and indexed) exactly once
+        Assert.assertEquals(FILES, resolver.opened.get());
+        for (int f = 0; f < FILES; ++f)
+            for (int r = 0; r < RECORDS; ++r)
+                Assert.assertSame(resolver.resolve(new SequenceAddress(address(f, r))),
+                        resolver.resolve(new SequenceAddress(address(f, r))));
+    }
+
+    @Test
+    public void testSlowFileDoesNotBlockOthers() throws Exception {
+        final Path dir = TempFileManager.getTempDir().toPath().toAbsolutePath();
+        NucleotideSequence[][] sequences = writeFiles(dir);
+        CountDownLatch release = new CountDownLatch(1);
+        final TestResolver resolver = new TestResolver(dir, release);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Opening of file 0 blocks until released
+            Future<NucleotideSequence> slow = executor.submit(new Callable<NucleotideSequence>() {
+                @Override
+                public NucleotideSequence call() throws Exception {
+                    return resolver.resolve(new SequenceAddress(address(0, 0))).getRegion(new Range(0, 10));
+                }
+            });
+            while (resolver.waiting.get() == 0)
+                Thread.sleep(1);
+
+            // Other files are resolved while file 0 is being opened
+            Assert.assertEquals(sequences[1][1].getRange(0, 10),
+                    resolver.resolve(new SequenceAddress(address(1, 1))).getRegion(new Range(0, 10)));
+            Assert.assertFalse(slow.isDone());
+
+            release.countDown();
+            Assert.assertEquals(sequences[0][0].getRange(0, 10), slow.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCorruptedFileIsReDownloadedOnce() throws Exception {
+        final Path dir = TempFileManager.getTempDir().toPath().toAbsolutePath().resolve("corrupted");
+        Files.createDirectories(dir);
+        final NucleotideSequence[][] sequences = writeFiles(dir);
+        final Path file = dir.resolve("file0.fasta");
+        final AtomicInteger downloads = new AtomicInteger();
+        AbstractRAFastaResolver resolver = new AbstractRAFastaResolver(true) {
+            @Override
+            protected String resolveRecordId(URI address) {
+                return address.getFragment();
+            }
+
+            @Override
+            protected String resolveReaderId(SequenceAddress address) {
+                return address.getUri().getSchemeSpecificPart();
+            }
+
+            @Override
+            protected LongProcessReporter getReporter() {
+                return LongProcessReporter.DefaultLongProcessReporter.INSTANCE;
+            }
+
+            @Override
+            protected Path getFASTAFile(SequenceAddress address) {
+                try {
+                    if (downloads.incrementAndGet() == 1)
+                        // First "download" comes with a broken index
+                        Files.write(file.resolveSibling(file.getFileName() + RandomAccessFastaIndex.INDEX_SUFFIX),
+                                new byte[]{1, 2, 3});
+                    else if (!Files.exists(file))
+                        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+                            for (int r = 0; r < RECORDS; ++r) {
+                                writer.println(">record" + r);
+                                writer.println(sequences[0][r]);
+                            }
+                        }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return file;
+            }
+        };
+
+        Assert.assertEquals(sequences[0][2].getRange(5, 25),
+                resolver.resolve(new SequenceAddress(address(0, 2))).getRegion(new Range(5, 25)));
+        Assert.assertEquals(2, downloads.get());
+    }
+
+    static String address(int file, int record) {
+        return "test:file" + file + ".fasta#record" + record;
+    }
+
+    static NucleotideSequence[][] writeFiles(Path dir) throws Exception {
+        NucleotideSequence[][] sequences = new NucleotideSequence[FILES][RECORDS];
+        for (int f = 0; f < FILES; ++f)
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(dir.resolve("file" + f + ".fasta")))) {
+                for (int r = 0; r < RECORDS; ++r) {
+                    sequences[f][r] = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 100, 1000);
+                    writer.println(">record" + r);
+                    writer.println(sequences[f][r]);
+                }
+            }
+        return sequences;
+    }
+
+    static final class TestResolver extends AbstractRAFastaResolver {
+        final Path dir;
+        final CountDownLatch release;
+        final AtomicInteger opened = new AtomicInteger(), waiting = new AtomicInteger();
+
+        TestResolver(Path dir, CountDownLatch release) {
+            super(false);
+            this.dir = dir;
+            this.release = release;
+        }
+
+        @Override
+        protected String resolveRecordId(URI address) {
+            return address.getFragment();
+        }
+
+        @Override
+        protected String resolveReaderId(SequenceAddress address) {
+            return address.getUri().getSchemeSpecificPart();
+        }
+
+        @Override
+        protected LongProcessReporter getReporter() {
+            return LongProcessReporter.DefaultLongProcessReporter.INSTANCE;
+        }
+
+        @Override
+        protected Path getFASTAFile(SequenceAddress address) {
+            String fileName = address.getUri().getSchemeSpecificPart();
+            if (release != null && fileName.equals("file0.fasta")) {
+                waiting.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            opened.incrementAndGet();
+            return dir.resolve(fileName);
+        }
+    }
+}
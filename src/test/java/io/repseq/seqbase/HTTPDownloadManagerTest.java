@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.seqbase;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.util.LongProcessReporter;
+import com.milaboratory.util.TempFileManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HTTPDownloadManagerTest {
+    static final LongProcessReporter REPORTER = LongProcessReporter.DefaultLongProcessReporter.INSTANCE;
+
+    HttpServer server;
+    ExecutorService serverExecutor;
+    CloseableHttpClient httpClient;
+    Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setDefaultMaxPerRoute(16);
+        cm.setMaxTotal(16);
+        httpClient = HttpClients.custom().setConnectionManager(cm).build();
+
+        dir = TempFileManager.getTempDir().toPath().toAbsolutePath();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        httpClient.close();
+    }
+
+    URI uri(String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    @Test
+    public void testBoundedParallelDownloads() throws Exception {
+        final AtomicInteger active = new AtomicInteger(), maxActive = new AtomicInteger();
+        server.createContext("/file", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = active.incrementAndGet();
+                synchronized (maxActive) {
+                    maxActive.set(Math.max(maxActive.get(), current));
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                active.decrementAndGet();
+                respond(exchange, 200, exchange.getRequestURI().getPath());
+            }
+        });
+
+        HTTPDownloadManager manager = new HTTPDownloadManager(httpClient, 3, 1, 0);
+        try {
+            List<CompletableFuture<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < 12; ++i)
+                futures.add(manager.downloadAsync(uri("/file" + i), dir.resolve("file" + i), false, REPORTER));
+            for (int i = 0; i < 12; ++i)
+                Assert.assertEquals("/file" + i,
+                        new String(Files.readAllBytes(futures.get(i).get()), StandardCharsets.US_ASCII));
+        } finally {
+            manager.shutdown();
+        }
+
+        Assert.assertTrue(maxActive.get() <= 3);
+        Assert.assertTrue(maxActive.get() >= 2);
+    }
+
+    @Test
+    public void testDeduplication() throws Exception {
+        final AtomicInteger hits = new AtomicInteger();
+        server.createContext("/same", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                hits.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                respond(exchange, 200, "content");
+            }
+        });
+
+        HTTPDownloadManager manager = new HTTPDownloadManager(httpClient);
+        try {
+            Path target = dir.resolve("same");
+            List<CompletableFuture<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; ++i)
+                futures.add(manager.downloadAsync(uri("/same"), target, false, REPORTER));
+            for (CompletableFuture<Path> future : futures)
+                Assert.assertEquals(target, future.get());
+            Assert.assertEquals(1, hits.get());
+
+            // Existing file is not downloaded again
+            Assert.assertEquals(target, manager.download(uri("/same"), target, false, REPORTER));
+            Assert.assertEquals(1, hits.get());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        final AtomicInteger hits = new AtomicInteger();
+        server.createContext("/unstable", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (hits.incrementAndGet() <= 2)
+                    respond(exchange, 503, "unavailable");
+                else
+                    respond(exchange, 200, "content");
+            }
+        });
+        final AtomicInteger missingHits = new AtomicInteger();
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                missingHits.incrementAndGet();
+                respond(exchange, 404, "not found");
+            }
+        });
+
+        HTTPDownloadManager manager = new HTTPDownloadManager(httpClient, 2, 4, 10);
+        try {
+            Path target = manager.download(uri("/unstable"), dir.resolve("unstable"), false, REPORTER);
+            Assert.assertEquals("content", new String(Files.readAllBytes(target), StandardCharsets.US_ASCII));
+            Assert.assertEquals(3, hits.get());
+
+            // Client errors are not retried
+            try {
+                manager.download(uri("/missing"), dir.resolve("missing"), false, REPORTER);
+                Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getMessage().contains("404"));
+            }
+            Assert.assertEquals(1, missingHits.get());
+            Assert.assertFalse(Files.exists(dir.resolve("missing")));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testResolver() throws Exception {
+        server.createContext("/test.fa", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, ">record1\nACGTACGTACGTTTTT\n>record2\nGGGGCCCCAAAATTTT\n");
+            }
+        });
+
+        Path cache = dir.resolve("cache");
+        HTTPResolversContext context = new HTTPResolversContext(cache, httpClient);
+        try {
+            HTTPSequenceResolvers.RAWHTTPResolver resolver = new HTTPSequenceResolvers.RAWHTTPResolver(context);
+            Assert.assertEquals(new NucleotideSequence("CCCCAAAA"),
+                    resolver.resolve(new SequenceAddress(uri("/test.fa#record2"))).getRegion(new Range(4, 12)));
+            Assert.assertEquals(new NucleotideSequence("ACGTACGT"),
+                    resolver.resolve(new SequenceAddress(uri("/test.fa#record1"))).getRegion(new Range(0, 8)));
+        } finally {
+            context.getDownloadManager().shutdown();
+        }
+    }
+}
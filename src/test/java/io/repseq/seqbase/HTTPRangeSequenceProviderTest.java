@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.seqbase;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class HTTPRangeSequenceProviderTest {
+    static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    HttpServer server;
+    CloseableHttpClient httpClient;
+    Path cache;
+    final Map<String, byte[]> files = new HashMap<>();
+    final AtomicLong bytesServed = new AtomicLong();
+    volatile boolean rangeSupport = true;
+    /**
+     * Number of range requests to answer with a truncated (short) response
+     */
+    final AtomicInteger truncate = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] content = files.get(exchange.getRequestURI().getPath());
+                if (content == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                Matcher matcher = range == null ? null : RANGE.matcher(range);
+                int status = 200, from = 0, to = content.length;
+                if (rangeSupport && matcher != null && matcher.matches()) {
+                    status = 206;
+                    from = Integer.parseInt(matcher.group(1));
+                    to = Math.min(content.length, Integer.parseInt(matcher.group(2)) + 1);
+                    if (truncate.getAndDecrement() > 0)
+                        to = from + (to - from) / 2;
+                    exchange.getResponseHeaders().add("Content-Range",
+                            "bytes " + from + "-" + (to - 1) + "/" + content.length);
+                }
+                exchange.sendResponseHeaders(status, to - from);
+                bytesServed.addAndGet(to - from);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(content, from, to - from);
+                }
+            }
+        });
+        server.start();
+        httpClient = HttpClients.createDefault();
+        cache = TempFileManager.getTempDir().toPath().toAbsolutePath().resolve("cache");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        httpClient.close();
+    }
+
+    String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Adds FASTA file (and optionally its index) to the server and returns record sequences
+     */
+    NucleotideSequence[] addFasta(String path, int records, int lineBases, boolean index) {
+        StringBuilder fasta = new StringBuilder(), fai = new StringBuilder();
+        NucleotideSequence[] sequences = new NucleotideSequence[records];
+        for (int r = 0; r < records; ++r) {
+            sequences[r] = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1000000, 2000000);
+            fasta.append(">record").append(r).append(" description\n");
+            fai.append("record").append(r).append('\t').append(sequences[r].size()).append('\t')
+                    .append(fasta.length()).append('\t').append(lineBases).append('\t').append(lineBases + 1)
+                    .append('\n');
+            String str = sequences[r].toString();
+            for (int i = 0; i < str.length(); i += lineBases)
+                fasta.append(str, i, Math.min(str.length(), i + lineBases)).append('\n');
+        }
+        files.put(path, fasta.toString().getBytes(StandardCharsets.US_ASCII));
+        if (index)
+            files.put(path + ".fai", fai.toString().getBytes(StandardCharsets.US_ASCII));
+        return sequences;
+    }
+
+    HTTPSequenceResolvers.RAWHTTPResolver resolver(HTTPResolversContext context) {
+        HTTPSequenceResolvers.RAWHTTPResolver resolver = new HTTPSequenceResolvers.RAWHTTPResolver(context);
+        resolver.setRangeRequests(true);
+        return resolver;
+    }
+
+    @Test
+    public void testIndexedFile() throws Exception {
+        NucleotideSequence[] sequences = addFasta("/genome.fa", 3, 60, true);
+        HTTPResolversContext context = new HTTPResolversContext(cache, httpClient);
+        try {
+            HTTPSequenceResolvers.RAWHTTPResolver resolver = resolver(context);
+            String address = url("/genome.fa#record1");
+            Assert.assertEquals(sequences[1].getRange(5000, 6000),
+                    resolver.resolve(new SequenceAddress(address)).getRegion(new Range(5000, 6000)));
+            Assert.assertEquals(sequences[1].getRange(90000, 90100).getReverseComplement(),
+                    resolver.resolve(new SequenceAddress(address)).getRegion(new Range(90100, 90000)));
+            Assert.assertEquals(sequences[1].size(), resolver.resolve(new SequenceAddress(address)).size());
+            int size = sequences[1].size();
+            try {
+                resolver.resolve(new SequenceAddress(address)).getRegion(new Range(size - 10, size + 10));
+                Assert.fail();
+            } catch (SequenceProviderIndexOutOfBoundsException e) {
+                Assert.assertEquals(new Range(size - 10, size), e.getAvailableRange());
+            }
+            Assert.assertEquals(sequences[2].getRange(0, 10),
+                    resolver.resolve(new SequenceAddress(url("/genome.fa#record2"))).getRegion(new Range(0, 10)));
+
+            // Only small part of the file was retrieved, and the file was not downloaded as a whole
+            Assert.assertTrue(bytesServed.get() < files.get("/genome.fa").length / 4);
+            String cacheFileName = resolver.resolveCacheFileName(URI.create(address));
+            Assert.assertFalse(Files.exists(cache.resolve(cacheFileName)));
+            Assert.assertTrue(Files.isDirectory(cache.resolve(cacheFileName +
+                    HTTPFastaSequenceResolver.CHUNKS_DIR_SUFFIX)));
+
+            // Cached chunks are reused by new resolver instance
+            long served = bytesServed.get();
+            Assert.assertEquals(sequences[1].getRange(5000, 6000),
+                    resolver(context).resolve(new SequenceAddress(address)).getRegion(new Range(5000, 6000)));
+            Assert.assertEquals(served, bytesServed.get());
+        } finally {
+            context.getDownloadManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testProbedLayout() throws Exception {
+        NucleotideSequence[] sequences = addFasta("/single.fa", 1, 70, false);
+        HTTPResolversContext context = new HTTPResolversContext(cache, httpClient);
+        try {
+            SequenceAddress address = new SequenceAddress(url("/single.fa#record0"));
+            HTTPSequenceResolvers.RAWHTTPResolver resolver = resolver(context);
+            int size = sequences[0].size();
+            Assert.assertEquals(size, resolver.resolve(address).size());
+            Assert.assertEquals(sequences[0].getRange(size - 1000, size),
+                    resolver.resolve(address).getRegion(new Range(size - 1000, size)));
+            Assert.assertEquals(sequences[0].getRange(60000, 61000),
+                    resolver.resolve(address).getRegion(new Range(60000, 61000)));
+            Assert.assertTrue(bytesServed.get() < files.get("/single.fa").length / 2);
+        } finally {
+            context.getDownloadManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidRemoteIndex() throws Exception {
+        NucleotideSequence[] sequences = addFasta("/single.fa", 1, 70, false);
+        files.put("/single.fa.fai", "<html>Not found</html>".getBytes(StandardCharsets.US_ASCII));
+        HTTPResolversContext context = new HTTPResolversContext(cache, httpClient);
+        try {
+            SequenceAddress address = new SequenceAddress(url("/single.fa#record0"));
+            Assert.assertEquals(sequences[0].getRange(1000, 2000),
+                    resolver(context).resolve(address).getRegion(new Range(1000, 2000)));
+        } finally {
+            context.getDownloadManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testIndexUri() throws Exception {
+        Assert.assertEquals(URI.create("http://host:8080/dir/genome.fa.fai"),
+                HTTPRangeSequenceProvider.indexUri(URI.create("http://host:8080/dir/genome.fa")));
+        Assert.assertNull(HTTPRangeSequenceProvider.indexUri(
+                URI.create("http://host/fetch?id=NC_000001&rettype=fasta")));
+        Assert.assertNull(HTTPRangeSequenceProvider.indexUri(URI.create("http://host/")));
+    }
+
+    @Test
+    public void testTruncatedResponses() throws Exception {
+        NucleotideSequence[] sequences = addFasta("/truncated.fa", 2, 60, true);
+        HTTPResolversContext context = new HTTPResolversContext(cache, httpClient,
+                new HTTPDownloadManager(httpClient, 4, 4, 10));
+        try {
+            SequenceAddress address = new SequenceAddress(url("/truncated.fa#record1"));
+            HTTPSequenceResolvers.RAWHTTPResolver resolver = resolver(context);
+            resolver.resolve(address).size();
+
+            // Short responses are retried
+            truncate.set(2);
+            int size = sequences[1].size();
+            Assert.assertEquals(sequences[1].getRange(size - 100000, size),
+                    resolver.resolve(address).getRegion(new Range(size - 100000, size)));
+            Assert.assertTrue(truncate.get() < 0);
+
+            // Only full chunks and the last chunk of the file are cached
+            Path chunkDir = cache.resolve(resolver.resolveCacheFileName(address.getUri()) +
+                    HTTPFastaSequenceResolver.CHUNKS_DIR_SUFFIX);
+            int fileSize = files.get("/truncated.fa").length;
+            long lastChunk = (fileSize - 1) / HTTPRangeSequenceProvider.DEFAULT_CHUNK_SIZE;
+            try (DirectoryStream<Path> chunks = Files.newDirectoryStream(chunkDir, "*" +
+                    HTTPRangeSequenceProvider.CHUNK_SUFFIX)) {
+                for (Path chunk : chunks)
+                    if (chunk.getFileName().toString().equals(lastChunk + HTTPRangeSequenceProvider.CHUNK_SUFFIX))
+                        Assert.assertEquals(fileSize - lastChunk * HTTPRangeSequenceProvider.DEFAULT_CHUNK_SIZE,
+                                Files.size(chunk));
+                    else
+                        Assert.assertEquals(HTTPRangeSequenceProvider.DEFAULT_CHUNK_SIZE, Files.size(chunk));
+            }
+        } finally {
+            context.getDownloadManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testFallbackToFullDownload() throws Exception {
+        rangeSupport = false;
+        NucleotideSequence[] sequences = addFasta("/norange.fa", 2, 60, true);
+        HTTPResolversContext context = new HTTPResolversContext(cache, httpClient);
+        try {
+            Assert.assertEquals(sequences[1].getRange(100, 200),
+                    resolver(context).resolve(new SequenceAddress(url("/norange.fa#record1")))
+                            .getRegion(new Range(100, 200)));
+        } finally {
+            context.getDownloadManager().shutdown();
+        }
+    }
+}
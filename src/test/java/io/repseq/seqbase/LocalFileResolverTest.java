@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.seqbase;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import io.repseq.util.TwoBitFastaFile;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LocalFileResolverTest {
+    @Test
+    public void testTwoBitSidecar() throws Exception {
+        Path work = TempFileManager.getTempDir().toPath().toAbsolutePath();
+        Path someFasta = work.resolve("some_fasta.fasta");
+        FileUtils.copyToFile(
+                TestUtil.class.getClassLoader().getResourceAsStream("sequences/some_fasta.fasta"),
+                someFasta.toFile());
+        SequenceAddress address = new SequenceAddress(work, "file://some_fasta.fasta#24.6jsd21.Tut");
+
+        // Text FASTA file is used if there is no sidecar
+        LocalFileResolver textResolver = new LocalFileResolver();
+        NucleotideSequence expected = textResolver.resolve(address).getRegion(new Range(10, 30));
+        Assert.assertEquals(new NucleotideSequence("ATCCTGGCTTAGAACTAACG"), expected);
+        Assert.assertFalse(Files.exists(TwoBitFastaFile.sidecarFor(someFasta)));
+        Assert.assertTrue(textResolver.twoBitFiles.isEmpty());
+
+        // Sidecar is created on first access
+        LocalFileResolver resolver = new LocalFileResolver();
+        resolver.setConvertToTwoBit(true);
+        Assert.assertEquals(expected, resolver.resolve(address).getRegion(new Range(10, 30)));
+        Assert.assertTrue(TwoBitFastaFile.hasSidecar(someFasta));
+        Assert.assertEquals(1, resolver.twoBitFiles.size());
+
+        // Existing sidecar is used without conversion
+        resolver = new LocalFileResolver();
+        Assert.assertEquals(expected.getReverseComplement(),
+                resolver.resolve(address).getRegion(new Range(30, 10)));
+        Assert.assertEquals(1, resolver.twoBitFiles.size());
+    }
+}
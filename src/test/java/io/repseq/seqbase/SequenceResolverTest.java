@@ -17,6 +17,7 @@ package io.repseq.seqbase;
 
 import com.milaboratory.core.Range;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.CachedSequenceProvider;
 import com.milaboratory.test.TestUtil;
 import com.milaboratory.util.TempFileManager;
 import org.apache.commons.io.FileUtils;
@@ -27,6 +28,7 @@ import org.junit.Test;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -67,6 +69,60 @@ public class SequenceResolverTest {
         Assert.assertEquals(new NucleotideSequence("ATCCTGGCTTAGAACTAACG"), seq);
     }
 
+    @Test
+    public void testOffHeapRecords() throws Exception {
+        Path work = TempFileManager.getTempDir().toPath().toAbsolutePath().resolve("off_heap");
+        Files.createDirectories(work);
+        NucleotideSequence expected = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1000, 1000);
+        Path fasta = work.resolve("records.fasta");
+        Files.write(fasta, (">record\n" + expected + "\n").getBytes(StandardCharsets.US_ASCII));
+
+        SequenceResolvers.initDefaultResolver(work.resolve("cache"));
+        SequenceResolvers.setOffHeapRecords(true);
+        try {
+            MultiSequenceResolver defaultResolver = (MultiSequenceResolver) SequenceResolvers.getDefault();
+            for (OptionalSequenceResolver resolver : defaultResolver.resolvers)
+                if (resolver instanceof AbstractRAFastaResolver)
+                    Assert.assertTrue(((AbstractRAFastaResolver) resolver).isOffHeapRecords());
+
+            CachedSequenceProvider<NucleotideSequence> provider = defaultResolver.resolve(
+                    new SequenceAddress(work, "file://records.fasta#record"));
+            Assert.assertEquals(expected.getRange(0, 10), provider.getRegion(new Range(0, 10)));
+
+            // Whole record was loaded into memory on first access, so the file is not read anymore
+            Files.write(fasta, (">record\n" + TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1000, 1000) +
+                    "\n").getBytes(StandardCharsets.US_ASCII));
+            Assert.assertEquals(expected.getRange(500, 1000).getReverseComplement(),
+                    provider.getRegion(new Range(1000, 500)));
+        } finally {
+            SequenceResolvers.setOffHeapRecords(false);
+        }
+    }
+
+    @Test
+    public void testRangeRequests() throws Exception {
+        Path work = TempFileManager.getTempDir().toPath().toAbsolutePath().resolve("range_requests");
+        SequenceResolvers.initDefaultResolver(work.resolve("cache"));
+        SequenceResolvers.setRangeRequests(true);
+        try {
+            boolean found = false;
+            for (OptionalSequenceResolver resolver : ((MultiSequenceResolver) SequenceResolvers.getDefault()).resolvers)
+                if (resolver instanceof HTTPFastaSequenceResolver) {
+                    Assert.assertTrue(((HTTPFastaSequenceResolver) resolver).isRangeRequests());
+                    found = true;
+                }
+            Assert.assertTrue(found);
+
+            // Setting is applied to default resolvers created afterwards
+            SequenceResolvers.initDefaultResolver(work.resolve("cache"));
+            for (OptionalSequenceResolver resolver : ((MultiSequenceResolver) SequenceResolvers.getDefault()).resolvers)
+                if (resolver instanceof HTTPFastaSequenceResolver)
+                    Assert.assertTrue(((HTTPFastaSequenceResolver) resolver).isRangeRequests());
+        } finally {
+            SequenceResolvers.setRangeRequests(false);
+        }
+    }
+
     @Test
     public void rawHttpTest1() throws Exception {
         Path dir = TempFileManager.getTempDir().toPath().toAbsolutePath();
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import io.repseq.core.GeneFeature;
+import io.repseq.core.ReferencePoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundedConcurrentCacheTest {
+    @Test
+    public void testBounded() throws Exception {
+        BoundedConcurrentCache<Integer, String> cache = new BoundedConcurrentCache<>(100);
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertNull(cache.get(i));
+            Assert.assertEquals("" + i, cache.putIfAbsent(i, "" + i));
+            Assert.assertTrue(cache.getStats().size <= 100);
+        }
+        Assert.assertEquals("999", cache.get(999));
+        BoundedConcurrentCache.Stats stats = cache.getStats();
+        Assert.assertEquals(1, stats.hits);
+        Assert.assertEquals(1000, stats.misses);
+        Assert.assertTrue(stats.evictions >= 900);
+    }
+
+    @Test
+    public void testSameValue() throws Exception {
+        BoundedConcurrentCache<String, String> cache = new BoundedConcurrentCache<>(10);
+        String first = new String("a");
+        Assert.assertSame(first, cache.putIfAbsent("k", first));
+        Assert.assertSame(first, cache.putIfAbsent("k", new String("a")));
+    }
+
+    @Test
+    public void testGeneFeatureCaches() throws Exception {
+        GeneFeature cdr3 = GeneFeature.CDR3;
+        GeneFeature coding = GeneFeature.getCodingGeneFeature(cdr3);
+        Assert.assertSame(coding, GeneFeature.getCodingGeneFeature(cdr3));
+        ReferencePoint frame = GeneFeature.getFrameReference(GeneFeature.VRegion);
+        Assert.assertSame(frame, GeneFeature.getFrameReference(GeneFeature.VRegion));
+        Assert.assertTrue(GeneFeature.getCodingGeneFeatureCacheStats().hits >= 1);
+        Assert.assertTrue(GeneFeature.getFrameReferenceCacheStats().hits >= 1);
+
+        // Features with arbitrary offsets don't grow caches without limit
+        for (int i = 0; i < 2 * GeneFeature.STATIC_CACHE_CAPACITY; ++i)
+            GeneFeature.getFrameReference(new GeneFeature(ReferencePoint.CDR3Begin.move(-i), ReferencePoint.CDR3End));
+        Assert.assertTrue(GeneFeature.getFrameReferenceCacheStats().size <= GeneFeature.STATIC_CACHE_CAPACITY);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProviderUtils;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.Well44497b;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OffHeapSequenceProviderTest {
+    @Test
+    public void testWildcards() throws Exception {
+        NucleotideSequence seq = new NucleotideSequence("ATTAGNNACAGTRACAGTANNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNGT");
+        // Small chunks to check packing across chunk boundaries
+        OffHeapSequenceProvider provider = OffHeapSequenceProvider.pack(SequenceProviderUtils.fromSequence(seq), 7);
+        Assert.assertEquals(seq.size(), provider.size());
+        Assert.assertEquals(seq, provider.getRegion(new Range(0, seq.size())));
+        Assert.assertEquals(seq.getRange(5, 13), provider.getRegion(new Range(5, 13)));
+        Assert.assertEquals(seq.getRange(5, 13).getReverseComplement(), provider.getRegion(new Range(13, 5)));
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Well44497b random = new Well44497b();
+        for (int i = 0; i < 100; i++) {
+            NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 1000);
+            OffHeapSequenceProvider provider = OffHeapSequenceProvider.pack(SequenceProviderUtils.fromSequence(seq),
+                    1 + random.nextInt(100));
+            Assert.assertEquals(TwoBitNucleotideCodec.recordSize(seq.size(),
+                    TwoBitNucleotideCodec.countExceptions(seq)), provider.getStorageSize());
+            for (int j = 0; j < 10; j++) {
+                int from = random.nextInt(seq.size());
+                int to = from + random.nextInt(seq.size() - from + 1);
+                Assert.assertEquals(seq.getRange(from, to), provider.getRegion(new Range(from, to)));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class TwoBitFastaFileTest {
+    @Test
+    public void testConvert() throws Exception {
+        RandomGenerator random = new Well19937c(123);
+        Path dir = TempFileManager.getTempDir().toPath().toAbsolutePath();
+        Path fasta = dir.resolve("genome.fasta");
+
+        NucleotideSequence[] sequences = new NucleotideSequence[5];
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(fasta))) {
+            for (int r = 0; r < sequences.length; ++r) {
+                NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 3000);
+                // Adding some wildcards
+                for (int i = 0; i < 5; ++i) {
+                    int position = random.nextInt(seq.size());
+                    seq = seq.getRange(0, position).concatenate(new NucleotideSequence("N"))
+                            .concatenate(seq.getRange(position, seq.size()));
+                }
+                sequences[r] = seq;
+                writer.println(">record" + r + " some description");
+                // Multi-line lower case records
+                String str = seq.toString().toLowerCase();
+                for (int i = 0; i < str.length(); i += 60)
+                    writer.println(str.substring(i, Math.min(str.length(), i + 60)));
+            }
+        }
+
+        Assert.assertFalse(TwoBitFastaFile.hasSidecar(fasta));
+        Path sidecar = TwoBitFastaFile.convert(fasta);
+        Assert.assertEquals(TwoBitFastaFile.sidecarFor(fasta), sidecar);
+        Assert.assertTrue(TwoBitFastaFile.hasSidecar(fasta));
+
+        TwoBitFastaFile file = TwoBitFastaFile.open(sidecar);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("record0", "record1", "record2", "record3", "record4")),
+                file.getRecordIds());
+
+        for (int r = 0; r < sequences.length; ++r) {
+            NucleotideSequence expected = sequences[r];
+            SequenceProvider<NucleotideSequence> provider = file.getSequenceProvider("record" + r);
+            Assert.assertEquals(expected.size(), provider.size());
+            Assert.assertEquals(expected, provider.getRegion(new Range(0, expected.size())));
+            for (int i = 0; i < 100; ++i) {
+                int from = random.nextInt(expected.size()),
+                        to = from + random.nextInt(expected.size() - from + 1);
+                Assert.assertEquals(expected.getRange(from, to), provider.getRegion(new Range(from, to)));
+                Assert.assertEquals(expected.getRange(from, to).getReverseComplement(),
+                        provider.getRegion(new Range(to, from)));
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.repseq.util;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.Well44497b;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+public class TwoBitNucleotideCodecTest {
+    @Test
+    public void testWildcards() throws Exception {
+        NucleotideSequence seq = new NucleotideSequence("ATTAGNNACAGTRACAGTAN");
+        ByteBuffer buffer = write(seq);
+        Assert.assertEquals(4, TwoBitNucleotideCodec.countExceptions(seq));
+        Assert.assertEquals(buffer.limit(), TwoBitNucleotideCodec.recordSize(buffer, 0));
+        Assert.assertEquals(seq, TwoBitNucleotideCodec.read(buffer));
+        Assert.assertEquals(buffer.limit(), buffer.position());
+        Assert.assertEquals(seq.getRange(5, 13), TwoBitNucleotideCodec.read(buffer, 0, 5, 13));
+        Assert.assertEquals(seq.getRange(7, 12), TwoBitNucleotideCodec.read(buffer, 0, 7, 12));
+    }
+
+    @Test
+    public void testOutOfRange() throws Exception {
+        ByteBuffer buffer = write(new NucleotideSequence("ATTAGACAGTAC"));
+        try {
+            TwoBitNucleotideCodec.read(buffer, 0, 8, 20);
+            Assert.fail();
+        } catch (SequenceProviderIndexOutOfBoundsException e) {
+            Assert.assertEquals(new Range(8, 12), e.getAvailableRange());
+        }
+        try {
+            TwoBitNucleotideCodec.read(buffer, 0, 15, 20);
+            Assert.fail();
+        } catch (SequenceProviderIndexOutOfBoundsException e) {
+            Assert.assertNull(e.getAvailableRange());
+        }
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Well44497b random = new Well44497b();
+        for (int i = 0; i < 100; i++) {
+            NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, 1, 300);
+            ByteBuffer buffer = write(seq);
+            Assert.assertEquals(seq, TwoBitNucleotideCodec.read(buffer));
+            for (int j = 0; j < 10; j++) {
+                int from = random.nextInt(seq.size());
+                int to = from + random.nextInt(seq.size() - from + 1);
+                Assert.assertEquals(seq.getRange(from, to), TwoBitNucleotideCodec.read(buffer, 0, from, to));
+            }
+        }
+    }
+
+    private static ByteBuffer write(NucleotideSequence seq) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TwoBitNucleotideCodec.write(new DataOutputStream(bos), seq);
+        return ByteBuffer.wrap(bos.toByteArray());
+    }
+}